@@ -0,0 +1,57 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.data;
+
+import de.ncoder.studipsync.studip.StudipAdapter;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap retained by the downloads of a large listing with JOL.
+ * Objects shared between the downloads, like the base URLs and the seminar, are only counted once,
+ * so the result is the cost of each additional download.
+ */
+public class DownloadFootprint {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        Seminar seminar = Seminar.getSeminar(String.format(StudipAdapter.PAGE_SELECT_SEMINAR, "0123456789abcdef0123456789abcdef"),
+                "5792 Vorlesung: Algorithmen & Datenstrukturen", "WS 2013/14, Grundlagen");
+        List<Download> downloads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Download download = Download.getDownload(String.format(
+                            "http://studip.uni-passau.de/studip/sendfile.php?type=0&file_id=%032x&file_name=Vorlesung_%d.pdf", i, i),
+                    "Vorlesung " + i, "26.08.2013 - 20:38", "1,2 MB", "Folien zur Vorlesung");
+            download.setSeminar(seminar);
+            download.setLevel(0);
+            download.getPath();
+            downloads.add(download);
+        }
+        GraphLayout layout = GraphLayout.parseInstance(downloads);
+        System.out.println(layout.toFootprint());
+        System.out.printf("%d downloads, %d bytes per download%n", count, layout.totalSize() / count);
+    }
+}
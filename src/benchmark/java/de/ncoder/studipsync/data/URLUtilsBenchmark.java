@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.data;
+
+import de.ncoder.studipsync.studip.StudipAdapter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses and rebuilds the URLs of a listing, like the adapters and {@link Download} do for every row
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class URLUtilsBenchmark {
+    private static final int URLS = 1000;
+
+    private final URL[] urls = new URL[URLS];
+    private final Download[] downloads = new Download[URLS];
+
+    @Setup
+    public void setUp() throws Exception {
+        for (int i = 0; i < URLS; i++) {
+            urls[i] = new URL(String.format(
+                    "http://studip.uni-passau.de/studip/sendfile.php?type=0&file_id=%032x&file_name=Vorlesung_%d.pdf", i, i));
+            downloads[i] = Download.getDownload(urls[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URLS)
+    public void extractParameters(Blackhole blackhole) {
+        for (URL url : urls) {
+            blackhole.consume(URLUtils.extractUrlParameters(url));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URLS)
+    public void setParameters(Blackhole blackhole) {
+        for (URL url : urls) {
+            Map<String, String> params = URLUtils.extractUrlParameters(url);
+            params.put(StudipAdapter.PARAM_NEWEST_ONLY, "false");
+            blackhole.consume(URLUtils.setUrlParameters(url, params));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URLS)
+    public void downloadUrls(Blackhole blackhole) {
+        for (Download download : downloads) {
+            blackhole.consume(download.getFullUrl());
+            blackhole.consume(download.getDiffUrl());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.studip.jsoup;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the rows of a download listing like {@link JsoupStudipAdapter} does, once with {@link CompiledSelector}s
+ * and once with the same queries passed to {@link Element#select(String)}, which parses them again for every row.
+ * Only the selects are measured, the downloads aren't created.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectorBenchmark {
+    private static final String QUERY_ROWS = "#content>table>tbody>tr:nth-of-type(2)>td:nth-of-type(2)>table>tbody>tr>td>table";
+    private static final String QUERY_HEADS = ">tbody>tr>td.printhead";
+    private static final String QUERY_INSETS = ">tbody>tr>td.blank img";
+    private static final String QUERY_DESCRIPTION = ">tbody>tr>td.printcontent";
+    private static final String QUERY_LINKS = "a";
+    private static final String QUERY_TITLED_LINKS = "a[title]";
+
+    private static final CompiledSelector SELECT_ROWS = CompiledSelector.compile(QUERY_ROWS);
+    private static final CompiledSelector SELECT_HEADS = CompiledSelector.compile(QUERY_HEADS);
+    private static final CompiledSelector SELECT_INSETS = CompiledSelector.compile(QUERY_INSETS);
+    private static final CompiledSelector SELECT_DESCRIPTION = CompiledSelector.compile(QUERY_DESCRIPTION);
+    private static final CompiledSelector SELECT_LINKS = CompiledSelector.compile(QUERY_LINKS);
+    private static final CompiledSelector SELECT_TITLED_LINKS = CompiledSelector.compile(QUERY_TITLED_LINKS);
+
+    @Param({"2000"})
+    public int rows;
+
+    private Document document;
+
+    @Setup
+    public void setUp() {
+        StringBuilder html = new StringBuilder("<div id=\"content\"><table><tr><td>header</td></tr><tr><td>left</td><td><table>");
+        for (int i = 0; i < rows; i++) {
+            html.append("<tr><td><table><tr><td class=\"blank\"><img><img><img></td><td class=\"printhead\"><a>i</a></td>")
+                    .append("<td class=\"printhead\"><a>File ").append(i).append("</a></td><td class=\"printhead\">")
+                    .append("<a title=\"t\" href=\"sendfile.php?type=0&file_id=f").append(i).append("&file_name=f.pdf\">x</a>")
+                    .append(" 1,5 MB 26.08.2013 - 20:38</td></tr><tr><td class=\"printcontent\">Description</td></tr></table></td></tr>");
+        }
+        html.append("</table></td></tr></table></div>");
+        document = Jsoup.parse(html.toString(), "http://studip.uni-passau.de/studip/plugins.php");
+    }
+
+    @Benchmark
+    public List<String[]> compiledSelectors() {
+        List<String[]> rows = new ArrayList<>();
+        for (Element row : SELECT_ROWS.select(document)) {
+            Elements content = SELECT_HEADS.select(row);
+            Elements insets = SELECT_INSETS.select(row);
+            if (content.size() >= 3) {
+                Elements info = SELECT_LINKS.select(content.get(1));
+                Elements link = SELECT_TITLED_LINKS.select(content.get(2));
+                Elements description = SELECT_DESCRIPTION.select(row);
+                rows.add(readRow(content, insets, info, link, description));
+            }
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public List<String[]> stringSelectors() {
+        List<String[]> rows = new ArrayList<>();
+        for (Element row : document.select(QUERY_ROWS)) {
+            Elements content = row.select(QUERY_HEADS);
+            Elements insets = row.select(QUERY_INSETS);
+            if (content.size() >= 3) {
+                Elements info = content.get(1).select(QUERY_LINKS);
+                Elements link = content.get(2).select(QUERY_TITLED_LINKS);
+                Elements description = row.select(QUERY_DESCRIPTION);
+                rows.add(readRow(content, insets, info, link, description));
+            }
+        }
+        return rows;
+    }
+
+    private static String[] readRow(Elements content, Elements insets, Elements info, Elements link, Elements description) {
+        List<TextNode> time = content.get(2).textNodes();
+        return new String[]{
+                link.get(0).absUrl("href"),
+                info.get(0).text().trim(),
+                time.get(time.size() - 1).text().trim().replace("\u00a0", ""),
+                content.get(2).text(),
+                description.isEmpty() ? "" : description.get(0).text().trim(),
+                Integer.toString(insets.size())
+        };
+    }
+}
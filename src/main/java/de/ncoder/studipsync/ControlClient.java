@@ -0,0 +1,75 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Triggers a sync in a running {@link SyncDaemon} through its {@link ControlServer}
+ * and prints its progress.
+ */
+public class ControlClient {
+    private final int port;
+    private final Path tokenFile;
+
+    public ControlClient(int port, Path tokenFile) {
+        this.port = port;
+        this.tokenFile = tokenFile;
+    }
+
+    /**
+     * @param selectors IDs, hashes or parts of the names of the seminars to synchronize, all if empty
+     * @return true, if the daemon reported success
+     */
+    public boolean sync(List<String> selectors, PrintStream progress) throws IOException {
+        StringBuilder command = new StringBuilder();
+        String token = ControlServer.readToken(tokenFile);
+        if (token != null) {
+            command.append(token).append(" ");
+        }
+        command.append(ControlServer.COMMAND_SYNC);
+        for (String selector : selectors) {
+            command.append(" ").append(selector);
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out.println(command);
+            String line;
+            String last = null;
+            while ((line = in.readLine()) != null) {
+                progress.println(line);
+                last = line;
+            }
+            return last != null && last.startsWith(ControlServer.RESULT_OK);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync;
+
+import de.ncoder.studipsync.data.Download;
+import de.ncoder.studipsync.data.Seminar;
+import de.ncoder.studipsync.storage.Storage;
+import de.ncoder.studipsync.storage.StorageLog;
+import de.ncoder.studipsync.studip.StudipException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.*;
+
+/**
+ * Accepts commands from {@link ControlClient}s on a loopback socket, so that syncs can be triggered
+ * in a running {@link SyncDaemon} without starting a new JVM.
+ * <p>
+ * The client sends a single line <code>[token] SYNC [seminar...]</code>, the server answers with progress
+ * lines, the report of the changed files and a final line starting with {@link #RESULT_OK} or {@link #RESULT_FAILED}.
+ * If a token file is set, only clients that can read the token are accepted.
+ */
+public class ControlServer implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ControlServer.class);
+
+    public static final int DEFAULT_PORT = 47815;
+    public static final String COMMAND_SYNC = "SYNC";
+    public static final String RESULT_OK = "OK";
+    public static final String RESULT_FAILED = "FAILED";
+    private static final int READ_TIMEOUT_MS = 10000;
+
+    private final Syncer syncer;
+    private final int port;
+    private final Path tokenFile;
+    private String token;
+    private ServerSocket server;
+    private Thread thread;
+
+    public ControlServer(Syncer syncer, int port, Path tokenFile) {
+        this.syncer = syncer;
+        this.port = port;
+        this.tokenFile = tokenFile;
+    }
+
+    public void start() throws IOException {
+        if (tokenFile != null) {
+            token = createToken();
+            writeToken(tokenFile, token);
+        }
+        server = new ServerSocket();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        thread = new Thread("ControlServer") {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Listening for commands on " + server.getLocalSocketAddress());
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try (Socket socket = server.accept()) {
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                handle(socket);
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    log.warn("Control connection failed", e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void handle(Socket socket) throws IOException, InterruptedException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+        String line = in.readLine();
+        if (line == null) {
+            return;
+        }
+        List<String> args = new ArrayList<>(Arrays.asList(line.trim().split("\\s+")));
+        if (token != null && (args.isEmpty() || !token.equals(args.remove(0)))) {
+            log.warn("Rejected control connection from " + socket.getRemoteSocketAddress() + ": illegal token");
+            out.println(RESULT_FAILED + " illegal token");
+            return;
+        }
+        if (args.isEmpty() || !COMMAND_SYNC.equalsIgnoreCase(args.get(0))) {
+            out.println(RESULT_FAILED + " unknown command " + args);
+            return;
+        }
+        socket.setSoTimeout(0);
+        sync(args.subList(1, args.size()), out);
+    }
+
+    private void sync(List<String> selectors, final PrintWriter out) throws InterruptedException {
+        StorageLog storeLog = new StorageLog();
+        Storage.StorageListener progress = new Storage.StorageListener() {
+            @Override
+            public void onDelete(Download download, Path child) {
+                out.println("\tDEL: " + child);
+            }
+
+            @Override
+            public void onUpdate(Download download, Path child, Path replacement) {
+                out.println("\tUPD: " + child);
+            }
+        };
+        //Don't interleave with runs of the daemon
+        synchronized (syncer) {
+            syncer.getStorage().registerListener(storeLog);
+            syncer.getStorage().registerListener(progress);
+            try {
+                List<Seminar> seminars = select(syncer.getSeminars(), selectors);
+                out.println("Synchronizing " + seminars.size() + " seminar" + (seminars.size() != 1 ? "s" : ""));
+                int failed = 0;
+                for (Seminar seminar : seminars) {
+                    out.println(seminar.getFullName());
+                    try {
+                        syncer.sync(Collections.singletonList(seminar));
+                    } catch (StudipException e) {
+                        failed++;
+                        out.println("\t" + RESULT_FAILED + ": " + e.getMessage());
+                    }
+                }
+                out.println(storeLog.getStatusMessage(syncer.getStorage().getRoot()));
+                syncer.flush();
+                out.println(failed == 0 ? RESULT_OK : RESULT_FAILED + " " + failed + " of " + seminars.size() + " seminars");
+            } catch (StudipException | IOException | RuntimeException e) {
+                log.warn("Triggered sync failed", e);
+                out.println(RESULT_FAILED + " " + e);
+            } finally {
+                syncer.getStorage().unregisterListener(progress);
+                syncer.getStorage().unregisterListener(storeLog);
+            }
+        }
+    }
+
+    /**
+     * @return the seminars whose ID or hash equals or whose name contains any of the selectors, all if there are none
+     */
+    public static List<Seminar> select(List<Seminar> seminars, List<String> selectors) {
+        if (selectors.isEmpty()) {
+            return seminars;
+        }
+        List<Seminar> selected = new ArrayList<>();
+        for (Seminar seminar : seminars) {
+            for (String selector : selectors) {
+                if (selector.equals(seminar.getID()) || selector.equals(seminar.getHash())
+                        || seminar.getFullName().toLowerCase().contains(selector.toLowerCase())) {
+                    selected.add(seminar);
+                    break;
+                }
+            }
+        }
+        return selected;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+        if (tokenFile != null) {
+            Files.deleteIfExists(tokenFile);
+        }
+    }
+
+    // --------------------------------TOKEN-----------------------------------
+
+    private static String createToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder bob = new StringBuilder();
+        for (byte b : bytes) {
+            bob.append(String.format("%02x", b));
+        }
+        return bob.toString();
+    }
+
+    private static void writeToken(Path file, String token) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Files.deleteIfExists(file);
+        try {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(file);
+        }
+        Files.write(file, token.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static String readToken(Path file) throws IOException {
+        if (file == null || !Files.isRegularFile(file)) {
+            return null;
+        }
+        return new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim();
+    }
+
+    // ------------------------------------------------------------------------
+
+    public int getPort() {
+        return server != null ? server.getLocalPort() : port;
+    }
+}
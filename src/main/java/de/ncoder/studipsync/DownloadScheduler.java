@@ -0,0 +1,328 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync;
+
+import de.ncoder.studipsync.data.Download;
+import de.ncoder.studipsync.data.Seminar;
+import de.ncoder.studipsync.studip.StudipException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static de.ncoder.studipsync.SyncPlanner.formatBytes;
+
+/**
+ * Runs transfers on parallel lanes. The largest transfers are started first on dedicated lanes,
+ * while the remaining lanes work through batches of small transfers.
+ * Idle lanes help out with the other kind of transfers.
+ * The threads of the lanes are kept for following runs until the scheduler is closed.
+ */
+public class DownloadScheduler {
+    private static final Logger log = LoggerFactory.getLogger(DownloadScheduler.class);
+
+    public static final int DEFAULT_LARGE_LANES = 1;
+    public static final int DEFAULT_SMALL_LANES = 2;
+    public static final long DEFAULT_LARGE_THRESHOLD = 16 * 1024 * 1024;
+    public static final int DEFAULT_BATCH_SIZE = 8;
+
+    private final TransferHandler handler;
+    private int largeLanes = DEFAULT_LARGE_LANES;
+    private int smallLanes = DEFAULT_SMALL_LANES;
+    private long largeThreshold = DEFAULT_LARGE_THRESHOLD;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private ExecutorService executor;
+
+    public DownloadScheduler(TransferHandler handler) {
+        this.handler = handler;
+    }
+
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Executes all transfers and waits for their completion.
+     * Failed transfers are logged and reported by {@link Transfer#isFailed()}.
+     * The log lines are tagged with the seminar of the first transfer, as transfers are run per seminar.
+     *
+     * @throws StudipException if any of the transfers failed with a StudipException
+     */
+    public void run(List<Transfer> transfers) throws StudipException, InterruptedException {
+        if (transfers.isEmpty()) {
+            return;
+        }
+        Seminar seminar = transfers.get(0).getDownload().getSeminar();
+
+        //Sort into queues
+        List<Transfer> sorted = new ArrayList<>(transfers);
+        Collections.sort(sorted, new Comparator<Transfer>() {
+            @Override
+            public int compare(Transfer o1, Transfer o2) {
+                return Long.compare(o2.getEstimatedBytes(), o1.getEstimatedBytes());
+            }
+        });
+        final BlockingDeque<Transfer> large = new LinkedBlockingDeque<>();
+        final Queue<List<Transfer>> small = new ConcurrentLinkedQueue<>();
+        List<Transfer> batch = new ArrayList<>(batchSize);
+        for (Transfer transfer : sorted) {
+            if (transfer.getEstimatedBytes() >= largeThreshold) {
+                large.add(transfer);
+            } else {
+                batch.add(transfer);
+                if (batch.size() >= batchSize) {
+                    small.add(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            small.add(batch);
+        }
+
+        //Start lanes
+        List<Lane> lanes = new ArrayList<>();
+        for (int i = 0; i < largeLanes; i++) {
+            lanes.add(new Lane("L" + i, seminar, true, large, small));
+        }
+        for (int i = 0; i < smallLanes; i++) {
+            lanes.add(new Lane("S" + i, seminar, false, large, small));
+        }
+        getExecutor().invokeAll(lanes);
+
+        //Report
+        for (Lane lane : lanes) {
+            log.info(lane.marker, lane.toString());
+        }
+        List<StudipException> exceptions = new ArrayList<>();
+        for (Transfer transfer : transfers) {
+            if (transfer.getException() instanceof StudipException) {
+                exceptions.add((StudipException) transfer.getException());
+            }
+        }
+        if (!exceptions.isEmpty()) {
+            StudipException ex = exceptions.get(0);
+            for (StudipException suppressed : exceptions.subList(1, exceptions.size())) {
+                ex.addSuppressed(suppressed);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * The pool grows to the number of lanes of a run, idle threads are dropped after a while
+     */
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "DownloadScheduler lane");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public int getLargeLanes() {
+        return largeLanes;
+    }
+
+    public void setLargeLanes(int largeLanes) {
+        this.largeLanes = largeLanes;
+    }
+
+    public int getSmallLanes() {
+        return smallLanes;
+    }
+
+    public void setSmallLanes(int smallLanes) {
+        this.smallLanes = smallLanes;
+    }
+
+    public long getLargeThreshold() {
+        return largeThreshold;
+    }
+
+    public void setLargeThreshold(long largeThreshold) {
+        this.largeThreshold = largeThreshold;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public static interface TransferHandler {
+        /**
+         * @return the number of bytes transferred
+         */
+        public long transfer(Transfer transfer) throws StudipException, IOException;
+    }
+
+    public static class Transfer {
+        private final Download download;
+        private final boolean diffOnly;
+        private final boolean isDiff;
+        private final long estimatedBytes;
+        private long bytes;
+        private Exception exception;
+
+        public Transfer(Download download, boolean diffOnly, boolean isDiff, long estimatedBytes) {
+            this.download = download;
+            this.diffOnly = diffOnly;
+            this.isDiff = isDiff;
+            this.estimatedBytes = estimatedBytes;
+        }
+
+        public Download getDownload() {
+            return download;
+        }
+
+        public boolean isDiffOnly() {
+            return diffOnly;
+        }
+
+        public boolean isDiff() {
+            return isDiff;
+        }
+
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public Exception getException() {
+            return exception;
+        }
+
+        public boolean isFailed() {
+            return exception != null;
+        }
+
+        @Override
+        public String toString() {
+            return download + (diffOnly ? " diff" : " full") + " ~" + formatBytes(estimatedBytes);
+        }
+    }
+
+    private class Lane implements Callable<Lane> {
+        private final String name;
+        private final Seminar seminar;
+        private final Marker marker;
+        private final boolean preferLarge;
+        private final BlockingDeque<Transfer> large;
+        private final Queue<List<Transfer>> small;
+        private int count;
+        private long bytes;
+        private long nanos;
+
+        private Lane(String name, Seminar seminar, boolean preferLarge, BlockingDeque<Transfer> large, Queue<List<Transfer>> small) {
+            this.name = name;
+            this.seminar = seminar;
+            this.marker = seminar == null ? null : MarkerFactory.getMarker(seminar.getID());
+            this.preferLarge = preferLarge;
+            this.large = large;
+            this.small = small;
+        }
+
+        @Override
+        public Lane call() {
+            List<Transfer> next;
+            while ((next = poll()) != null) {
+                for (Transfer transfer : next) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return this;
+                    }
+                    execute(transfer);
+                }
+            }
+            return this;
+        }
+
+        private List<Transfer> poll() {
+            Transfer transfer;
+            if (preferLarge) {
+                //Largest first
+                transfer = large.pollFirst();
+                if (transfer != null) {
+                    return Collections.singletonList(transfer);
+                }
+                return small.poll();
+            } else {
+                List<Transfer> batch = small.poll();
+                if (batch != null) {
+                    return batch;
+                }
+                //Help with the smallest of the large transfers
+                transfer = large.pollLast();
+                return transfer != null ? Collections.singletonList(transfer) : null;
+            }
+        }
+
+        private void execute(Transfer transfer) {
+            long start = System.nanoTime();
+            try {
+                transfer.bytes = handler.transfer(transfer);
+                bytes += transfer.bytes;
+                count++;
+            } catch (StudipException | IOException | RuntimeException e) {
+                log.warn(marker, "Couldn't download " + transfer.getDownload(), e);
+                transfer.exception = e;
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        public double getThroughput() {
+            return nanos > 0 ? bytes / (nanos / 1e9) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Lane %s%s: %d file%s, %s in %.1fs, %s/s", name, seminar == null ? "" : " [" + seminar.getFullName() + "]",
+                    count, count != 1 ? "s" : "", formatBytes(bytes), nanos / 1e9, formatBytes((long) getThroughput()));
+        }
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync;
+
+import de.ncoder.studipsync.data.Download;
+import de.ncoder.studipsync.storage.StagingArea;
+import de.ncoder.studipsync.storage.ValidatorStore;
+import de.ncoder.studipsync.studip.DownloadRequest;
+import de.ncoder.studipsync.studip.DownloadResponse;
+import de.ncoder.studipsync.studip.StudipAdapter;
+import de.ncoder.studipsync.studip.StudipException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Fetches downloads into local files. If a {@link StagingArea} is set, interrupted downloads
+ * are kept and resumed with range requests on the next try. If the validators of a previous
+ * download are known, the request is made conditional and unchanged files aren't transferred again.
+ */
+public class Downloader {
+    private static final Logger log = LoggerFactory.getLogger(Downloader.class);
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private static final long TRANSFER_CHUNK = 1024 * 1024;
+
+    public static final int DEFAULT_SEGMENTS = 4;
+    public static final long DEFAULT_SEGMENT_THRESHOLD = 64 * 1024 * 1024;
+
+    private final StudipAdapter adapter;
+    private final Lock browserLock;
+    private StagingArea staging;
+    private int segments = DEFAULT_SEGMENTS;
+    private long segmentThreshold = DEFAULT_SEGMENT_THRESHOLD;
+    private ExecutorService segmentExecutor;
+
+    public Downloader(StudipAdapter adapter, Lock browserLock) {
+        this.adapter = adapter;
+        this.browserLock = browserLock;
+    }
+
+    /**
+     * Downloads the file completely. The returned file must be passed to {@link #release(Result)} after use.
+     */
+    public Result fetch(Download download, boolean diffOnly) throws StudipException, IOException {
+        return fetch(download, diffOnly, null);
+    }
+
+    /**
+     * Downloads the file completely, unless the server reports that it didn't change since it was
+     * downloaded with the given validators. In that case, {@link Result#isNotModified()} is true and
+     * there is no file.
+     *
+     * @param known the validators of the local copy or null if the local copy can't be used
+     */
+    public Result fetch(Download download, boolean diffOnly, ValidatorStore.Entry known) throws StudipException, IOException {
+        if (staging == null) {
+            Path tmp = Files.createTempFile(
+                    download.getSeminar().getID().replaceAll("[^A-Za-z0-9]+", "") + "-",
+                    "-" + download.getFileName().replaceAll("[^A-Za-z0-9]+", "")
+            );
+            try (DownloadResponse response = open(download, conditional(new DownloadRequest(diffOnly), known))) {
+                if (response.isNotModified()) {
+                    Files.delete(tmp);
+                    return Result.notModified(download, diffOnly);
+                }
+                return new Result(download, diffOnly, tmp, write(response.getChannel(), tmp, false), response);
+            } catch (IOException | StudipException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+        } else {
+            return fetchStaged(download, diffOnly, known);
+        }
+    }
+
+    private static DownloadRequest conditional(DownloadRequest request, ValidatorStore.Entry known) {
+        if (known != null) {
+            request.ifNoneMatch(known.getETag()).ifModifiedSince(known.getLastModified());
+        }
+        return request;
+    }
+
+    private Result fetchStaged(Download download, boolean diffOnly, ValidatorStore.Entry known) throws StudipException, IOException {
+        String url = (diffOnly ? download.getDiffUrl() : download.getFullUrl()).toExternalForm();
+        Path part = staging.getPartFile(download, diffOnly);
+
+        //Large files
+        if (!diffOnly && segments > 1 && download.getSize() >= segmentThreshold && staging.getEntry(download, false) == null) {
+            staging.discard(download, false);
+            try {
+                return fetchSegmented(download, part, known);
+            } catch (IOException | StudipException | RuntimeException e) {
+                staging.discard(download, false);
+                throw e;
+            }
+        }
+
+        //Try to resume
+        StagingArea.Entry entry = staging.getEntry(download, diffOnly);
+        DownloadResponse response;
+        if (entry != null && entry.getValidator() != null && entry.getOffset() > 0 && url.equals(entry.getUrl())) {
+            log.debug("Resuming " + download + " from " + entry);
+            response = open(download, new DownloadRequest(diffOnly).range(entry.getOffset(), -1).ifRange(entry.getValidator()));
+            if (response.getStatus() == HTTP_RANGE_NOT_SATISFIABLE && entry.getOffset() == entry.getTotal()) {
+                //Already complete
+                response.close();
+                return new Result(download, diffOnly, part, 0, null);
+            } else if (response.getStatus() == HTTP_RANGE_NOT_SATISFIABLE || (response.isPartial() && response.getOffset() != entry.getOffset())) {
+                log.debug("Can't resume " + download + ", got " + response);
+                response.close();
+                response = null;
+            }
+        } else {
+            response = null;
+        }
+
+        //Restart
+        if (response == null || !response.isPartial()) {
+            if (response == null) {
+                response = open(download, conditional(new DownloadRequest(diffOnly), known));
+            }
+            staging.discard(download, diffOnly);
+            if (response.isNotModified()) {
+                response.close();
+                return Result.notModified(download, diffOnly);
+            }
+            entry = new StagingArea.Entry(url, response.getValidator(), response.getLength(), 0);
+        }
+
+        //Transfer
+        long bytes = 0;
+        boolean resumable = entry.getValidator() != null;
+        try {
+            if (resumable) {
+                staging.putEntry(download, diffOnly, entry);
+            }
+            bytes = write(response.getChannel(), part, true);
+        } catch (IOException e) {
+            if (!resumable) {
+                staging.discard(download, diffOnly);
+            }
+            throw e;
+        } finally {
+            response.close();
+            if (resumable && Files.exists(part)) {
+                entry.setOffset(Files.size(part));
+                staging.putEntry(download, diffOnly, entry);
+            }
+        }
+
+        //Verify
+        if (entry.getTotal() >= 0 && Files.size(part) != entry.getTotal()) {
+            throw new IOException("Incomplete download of " + download + ", got " + Files.size(part) + " of " + entry.getTotal() + " bytes");
+        }
+        return new Result(download, diffOnly, part, bytes, response);
+    }
+
+    /**
+     * Downloads parts of the file in parallel and writes them directly to their position in the file.
+     * The first request also determines the length and validator of the file. If the server doesn't
+     * support ranges, its response is used for downloading the whole file. If it does, but the segments
+     * can't be checked to belong to the same file, the whole file is requested again without a range.
+     */
+    private Result fetchSegmented(final Download download, Path file, ValidatorStore.Entry known) throws StudipException, IOException {
+        long segmentSize = Math.max(download.getSize() / segments, 1);
+        final DownloadResponse first = open(download, conditional(new DownloadRequest(false).range(0, segmentSize - 1), known));
+        if (first.isNotModified()) {
+            first.close();
+            return Result.notModified(download, false);
+        }
+        if (!first.isPartial() || first.getOffset() != 0 || first.getTotalLength() < 0 || first.getValidator() == null) {
+            log.debug("Can't download " + download + " in segments, got " + first);
+            DownloadResponse whole = first;
+            if (first.isPartial()) {
+                //The body only contains the first segment
+                first.close();
+                whole = open(download, conditional(new DownloadRequest(false), known));
+                if (whole.isNotModified()) {
+                    whole.close();
+                    return Result.notModified(download, false);
+                }
+            }
+            try {
+                return new Result(download, false, file, writeComplete(download, whole, file), whole);
+            } finally {
+                whole.close();
+            }
+        }
+
+        final long total = first.getTotalLength();
+        final String validator = first.getValidator();
+        segmentSize = first.getLength();
+        log.debug("Downloading " + download + " (" + total + " bytes) in segments of " + segmentSize + " bytes");
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            //Preallocate
+            if (total > 0) {
+                channel.write(ByteBuffer.wrap(new byte[1]), total - 1);
+            }
+
+            //Start the remaining segments
+            List<Future<Long>> futures = new ArrayList<>();
+            for (long start = segmentSize; start < total; start += segmentSize) {
+                final long segmentStart = start;
+                final long segmentEnd = Math.min(start + segmentSize, total) - 1;
+                futures.add(getSegmentExecutor().submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        try (DownloadResponse response = open(download, new DownloadRequest(false).range(segmentStart, segmentEnd).ifRange(validator))) {
+                            if (!response.isPartial() || response.getOffset() != segmentStart || !validator.equals(response.getValidator())) {
+                                throw new IOException("Unexpected response for segment " + segmentStart + "-" + segmentEnd + " of " + download + ": " + response);
+                            }
+                            return writeSegment(response.getChannel(), channel, segmentStart, segmentEnd - segmentStart + 1);
+                        }
+                    }
+                }));
+            }
+
+            //Download the first segment while waiting
+            long bytes;
+            try {
+                bytes = writeSegment(first.getChannel(), channel, 0, segmentSize);
+            } finally {
+                first.close();
+            }
+            IOException failure = null;
+            for (Future<Long> future : futures) {
+                try {
+                    bytes += future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new IOException("Couldn't download all segments of " + download, e.getCause());
+                    }
+                    future.cancel(true);
+                } catch (InterruptedException e) {
+                    for (Future<Long> f : futures) {
+                        f.cancel(true);
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while downloading " + download);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+
+            //Verify
+            if (bytes != total || channel.size() != total) {
+                throw new IOException("Segmented download of " + download + " is incomplete, got " + bytes + " of " + total + " bytes");
+            }
+            return new Result(download, false, file, bytes, first);
+        }
+    }
+
+    /**
+     * Writes the body of an unranged response and checks that the whole file was received
+     */
+    private static long writeComplete(Download download, DownloadResponse response, Path file) throws IOException {
+        if (response.isPartial()) {
+            throw new IOException("Expected the whole file " + download + ", but got " + response);
+        }
+        long bytes = write(response.getChannel(), file, false);
+        if (response.getLength() >= 0 && bytes != response.getLength()) {
+            throw new IOException("Incomplete download of " + download + ", got " + bytes + " of " + response.getLength() + " bytes");
+        }
+        return bytes;
+    }
+
+    private static long writeSegment(ReadableByteChannel src, FileChannel dst, long position, long length) throws IOException {
+        long count = transfer(src, dst, position, length);
+        if (count != length) {
+            throw new IOException("Segment at " + position + " ended after " + count + " of " + length + " bytes");
+        }
+        return count;
+    }
+
+    private synchronized ExecutorService getSegmentExecutor() {
+        if (segmentExecutor == null) {
+            segmentExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final ThreadFactory delegate = Executors.defaultThreadFactory();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = delegate.newThread(r);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return segmentExecutor;
+    }
+
+    public synchronized void close() {
+        if (segmentExecutor != null) {
+            segmentExecutor.shutdownNow();
+            segmentExecutor = null;
+        }
+    }
+
+    private DownloadResponse open(Download download, DownloadRequest request) throws StudipException, IOException {
+        browserLock.lock();
+        try {
+            return adapter.startDownload(download, request);
+        } finally {
+            browserLock.unlock();
+        }
+    }
+
+    private static long write(ReadableByteChannel src, Path dst, boolean append) throws IOException {
+        try (FileChannel out = append
+                ? FileChannel.open(dst, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : FileChannel.open(dst, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return transfer(src, out, out.size(), -1);
+        }
+    }
+
+    /**
+     * Lets the FileChannel read from the source directly, so that no intermediate heap buffers are needed for writing.
+     *
+     * @param length number of bytes to transfer or -1 for transferring everything
+     * @return the number of bytes transferred
+     */
+    private static long transfer(ReadableByteChannel src, FileChannel dst, long position, long length) throws IOException {
+        long count = 0;
+        while (length < 0 || count < length) {
+            long chunk = length < 0 ? TRANSFER_CHUNK : Math.min(TRANSFER_CHUNK, length - count);
+            long transferred = dst.transferFrom(src, position + count, chunk);
+            if (transferred <= 0) {
+                //A blocking source channel only transfers nothing at its end
+                break;
+            }
+            count += transferred;
+        }
+        return count;
+    }
+
+    /**
+     * Deletes the downloaded file, if it wasn't moved away
+     */
+    public void release(Result result) throws IOException {
+        if (result.isNotModified()) {
+            return;
+        }
+        if (staging == null) {
+            Files.deleteIfExists(result.getFile());
+        } else {
+            staging.discard(result.download, result.diffOnly);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    public StagingArea getStaging() {
+        return staging;
+    }
+
+    public void setStaging(StagingArea staging) {
+        this.staging = staging;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    public long getSegmentThreshold() {
+        return segmentThreshold;
+    }
+
+    public void setSegmentThreshold(long segmentThreshold) {
+        this.segmentThreshold = segmentThreshold;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public static class Result {
+        private final Download download;
+        private final boolean diffOnly;
+        private final Path file;
+        private final long bytes;
+        private final String etag;
+        private final String lastModified;
+
+        private Result(Download download, boolean diffOnly, Path file, long bytes, DownloadResponse response) {
+            this.download = download;
+            this.diffOnly = diffOnly;
+            this.file = file;
+            this.bytes = bytes;
+            this.etag = response != null ? response.getETag() : null;
+            this.lastModified = response != null ? response.getLastModified() : null;
+        }
+
+        private static Result notModified(Download download, boolean diffOnly) {
+            return new Result(download, diffOnly, null, 0, null);
+        }
+
+        /**
+         * @return true, if the server confirmed that the local copy is still up to date
+         */
+        public boolean isNotModified() {
+            return file == null;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return the number of bytes transferred, not including resumed data
+         */
+        public long getBytes() {
+            return bytes;
+        }
+    }
+}
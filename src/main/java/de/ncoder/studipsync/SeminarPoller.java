@@ -0,0 +1,291 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync;
+
+import de.ncoder.studipsync.data.Download;
+import de.ncoder.studipsync.data.Seminar;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which seminars are polled in each run of the {@link SyncDaemon}. The time between changes of
+ * every seminar is learned from the last modified dates of its downloads, so that seminars that change
+ * often are polled often and seminars of past periods are only polled rarely.
+ * The number of seminars synchronized per run is limited by a global budget of requests per hour.
+ */
+public class SeminarPoller {
+    private static final Logger log = LoggerFactory.getLogger(SeminarPoller.class);
+
+    public static final int DEFAULT_REQUESTS_PER_HOUR = 120;
+    /**
+     * Requests needed for checking a seminar without downloading anything, if the options of the Syncer are unknown:
+     * select, list folders, list latest files
+     */
+    public static final int DEFAULT_REQUESTS_PER_SEMINAR = 3;
+    /**
+     * Number of polls per expected time between two changes
+     */
+    private static final int POLLS_PER_CHANGE = 4;
+    /**
+     * Weight of the newest sample for the average time between changes
+     */
+    private static final double SMOOTHING = 0.3;
+    /**
+     * A period is considered active as long as any of its seminars changed within this time
+     */
+    private static final long ACTIVE_PERIOD = TimeUnit.DAYS.toMillis(30);
+
+    private final Path file;
+    private final Map<String, History> histories = new HashMap<>();
+    private long minIntervalMs = TimeUnit.MINUTES.toMillis(15);
+    private long maxIntervalMs = TimeUnit.DAYS.toMillis(7);
+    private int requestsPerHour = DEFAULT_REQUESTS_PER_HOUR;
+    private int requestsPerSeminar = DEFAULT_REQUESTS_PER_SEMINAR;
+
+    public SeminarPoller(Path file) {
+        this.file = file;
+        load();
+    }
+
+    // --------------------------------SCHEDULE--------------------------------
+
+    /**
+     * @param periodMs time until the next call of this method, used for calculating the share of the request budget
+     * @return the seminars that are due, most overdue first, limited by the request budget
+     */
+    public synchronized List<Seminar> select(List<Seminar> seminars, long now, long periodMs) {
+        Set<String> activePeriods = getActivePeriods(seminars, now);
+        final Map<Seminar, Double> overdue = new HashMap<>();
+        for (Seminar seminar : seminars) {
+            History history = histories.get(seminar.getHash());
+            if (history == null || history.lastPoll <= 0) {
+                overdue.put(seminar, Double.POSITIVE_INFINITY);
+            } else {
+                double ratio = (now - history.lastPoll) / (double) getPollInterval(seminar, activePeriods, now);
+                if (ratio >= 1) {
+                    overdue.put(seminar, ratio);
+                }
+            }
+        }
+
+        List<Seminar> due = new ArrayList<>(overdue.keySet());
+        Collections.sort(due, new Comparator<Seminar>() {
+            @Override
+            public int compare(Seminar o1, Seminar o2) {
+                return Double.compare(overdue.get(o2), overdue.get(o1));
+            }
+        });
+        int budget = getSeminarBudget(periodMs);
+        if (due.size() > budget) {
+            log.info("Deferring " + (due.size() - budget) + " of " + due.size() + " due seminars to stay within "
+                    + requestsPerHour + " requests per hour");
+            due = new ArrayList<>(due.subList(0, budget));
+        }
+        return due;
+    }
+
+    /**
+     * @return the number of seminars that can be synchronized within the given time, at least one
+     */
+    public int getSeminarBudget(long periodMs) {
+        long requests = requestsPerHour * periodMs / TimeUnit.HOURS.toMillis(1);
+        return (int) Math.max(1, requests / requestsPerSeminar);
+    }
+
+    /**
+     * @return the time between two polls of the seminar, a fraction of the expected time until it changes next
+     */
+    public synchronized long getPollInterval(Seminar seminar, Set<String> activePeriods, long now) {
+        History history = histories.get(seminar.getHash());
+        if (history == null || history.lastChange <= 0) {
+            return minIntervalMs;
+        }
+        String period = getPeriod(seminar);
+        if (period != null && !activePeriods.contains(period)) {
+            return maxIntervalMs;
+        }
+        //Without changes for longer than usual, the seminar probably cooled down
+        double expected = Math.max(history.interval, now - history.lastChange);
+        return Math.min(maxIntervalMs, Math.max(minIntervalMs, (long) (expected / POLLS_PER_CHANGE)));
+    }
+
+    private Set<String> getActivePeriods(List<Seminar> seminars, long now) {
+        Set<String> periods = new HashSet<>();
+        for (Seminar seminar : seminars) {
+            History history = histories.get(seminar.getHash());
+            String period = getPeriod(seminar);
+            if (period != null && (history == null || now - history.lastChange < ACTIVE_PERIOD)) {
+                periods.add(period);
+            }
+        }
+        return periods;
+    }
+
+    private static String getPeriod(Seminar seminar) {
+        try {
+            return seminar.getPeriod();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // --------------------------------HISTORY---------------------------------
+
+    /**
+     * Records a poll of the seminar and learns from the last modified dates of its downloads.
+     *
+     * @param downloads the downloads found or null if the poll failed
+     */
+    public synchronized void observe(Seminar seminar, List<Download> downloads, long now) {
+        History history = histories.get(seminar.getHash());
+        if (history == null) {
+            history = new History();
+            histories.put(seminar.getHash(), history);
+        }
+        history.lastPoll = now;
+        if (downloads == null) {
+            return;
+        }
+
+        long latest = 0;
+        for (Download download : downloads) {
+            latest = Math.max(latest, download.getLastModifiedTime());
+        }
+        if (latest <= 0) {
+            return;
+        }
+        if (history.lastChange <= 0) {
+            //First observation, assume the age of the newest file is the usual time between changes
+            history.interval = Math.max(now - latest, minIntervalMs);
+            history.lastChange = latest;
+        } else if (latest > history.lastChange) {
+            long sample = latest - history.lastChange;
+            history.interval = SMOOTHING * sample + (1 - SMOOTHING) * history.interval;
+            history.lastChange = latest;
+            history.changes++;
+            log.debug(seminar + " changed after " + TimeUnit.MILLISECONDS.toMinutes(sample) + " min, expecting changes every "
+                    + TimeUnit.MILLISECONDS.toMinutes((long) history.interval) + " min");
+        }
+    }
+
+    private void load() {
+        if (file == null || !Files.isRegularFile(file)) {
+            return;
+        }
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JSONObject json = (JSONObject) new JSONParser().parse(r);
+            for (Object o : json.entrySet()) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                JSONObject value = (JSONObject) e.getValue();
+                History history = new History();
+                history.lastChange = ((Number) value.get("lastChange")).longValue();
+                history.lastPoll = ((Number) value.get("lastPoll")).longValue();
+                history.interval = ((Number) value.get("interval")).doubleValue();
+                history.changes = ((Number) value.get("changes")).intValue();
+                histories.put((String) e.getKey(), history);
+            }
+        } catch (IOException | org.json.simple.parser.ParseException | ClassCastException | NullPointerException e) {
+            log.warn("Illegal history file " + file + ", ignoring it", e);
+            histories.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, History> e : histories.entrySet()) {
+            JSONObject value = new JSONObject();
+            value.put("lastChange", e.getValue().lastChange);
+            value.put("lastPoll", e.getValue().lastPoll);
+            value.put("interval", e.getValue().interval);
+            value.put("changes", e.getValue().changes);
+            json.put(e.getKey(), value);
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write(json.toJSONString());
+        }
+    }
+
+    private static class History {
+        private long lastChange;
+        private long lastPoll;
+        private double interval;
+        private int changes;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public long getMinIntervalMs() {
+        return minIntervalMs;
+    }
+
+    public void setMinIntervalMs(long minIntervalMs) {
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    public long getMaxIntervalMs() {
+        return maxIntervalMs;
+    }
+
+    public void setMaxIntervalMs(long maxIntervalMs) {
+        this.maxIntervalMs = maxIntervalMs;
+    }
+
+    public int getRequestsPerHour() {
+        return requestsPerHour;
+    }
+
+    public void setRequestsPerHour(int requestsPerHour) {
+        this.requestsPerHour = requestsPerHour;
+    }
+
+    public int getRequestsPerSeminar() {
+        return requestsPerSeminar;
+    }
+
+    /**
+     * @param requestsPerSeminar the requests needed for checking a seminar, see {@link Syncer#getRequestsPerSeminar()}
+     */
+    public void setRequestsPerSeminar(int requestsPerSeminar) {
+        this.requestsPerSeminar = Math.max(1, requestsPerSeminar);
+    }
+}
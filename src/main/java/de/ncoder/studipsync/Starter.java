@@ -26,9 +26,14 @@ package de.ncoder.studipsync;
 
 import de.ncoder.studipsync.data.Download;
 import de.ncoder.studipsync.storage.LocalStorage;
+import de.ncoder.studipsync.storage.StagingArea;
+import de.ncoder.studipsync.storage.ValidatorStore;
 import de.ncoder.studipsync.storage.Storage;
 import de.ncoder.studipsync.storage.StorageLog;
+import de.ncoder.studipsync.studip.StudipAdapter;
 import de.ncoder.studipsync.studip.jsoup.JsoupStudipAdapter;
+import de.ncoder.studipsync.studip.jsoup.PageCache;
+import de.ncoder.studipsync.studip.rest.RestStudipAdapter;
 import org.apache.commons.cli.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,7 +56,19 @@ public class Starter {
                 return;
             }
 
-            Syncer syncer = createSyncer(cmd);
+            StarterOptions options = createOptions(cmd);
+            if (cmd.hasOption(OPTION_TRIGGER)) {
+                ControlClient client = new ControlClient(options.getControlPort(), options.getControlTokenPath());
+                boolean success = client.sync(cmd.getArgList(), System.out);
+                System.exit(success ? 0 : 1);
+            }
+
+            Syncer syncer = createSyncer(options);
+            if (options.isDaemon()) {
+                runDaemon(syncer, options);
+                return;
+            }
+
             StorageLog storeLog = new StorageLog();
             syncer.getStorage().registerListener(storeLog);
             try {
@@ -85,13 +102,51 @@ public class Starter {
         return ver == null ? "SNAPSHOT" : ver;
     }
 
+    private static void runDaemon(Syncer syncer, StarterOptions options) throws InterruptedException, IOException {
+        log.info("Started " + getImplementationTitle() + " " + getImplementationVersion() + " as daemon");
+        final SyncDaemon daemon = new SyncDaemon(syncer, options.getDaemonIntervalMs());
+        final ControlServer control = options.isControlled()
+                ? new ControlServer(syncer, options.getControlPort(), options.getControlTokenPath())
+                : null;
+        if (options.isAdaptive()) {
+            SeminarPoller poller = new SeminarPoller(options.getStatePath() == null ? null : options.getStatePath().resolve("history.json"));
+            poller.setMinIntervalMs(options.getDaemonIntervalMs());
+            poller.setRequestsPerHour(options.getAdaptiveRequestsPerHour());
+            poller.setRequestsPerSeminar(syncer.getRequestsPerSeminar());
+            daemon.setPoller(poller);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread("SyncDaemon shutdown") {
+            @Override
+            public void run() {
+                try {
+                    if (control != null) {
+                        control.close();
+                    }
+                    daemon.close();
+                    log.info("Stopped");
+                } catch (IOException e) {
+                    log.warn("Couldn't close daemon", e);
+                }
+            }
+        });
+        if (control != null) {
+            control.start();
+        }
+        daemon.start();
+        daemon.awaitTermination();
+    }
+
     public static Syncer createSyncer(CommandLine cmd) throws IOException, ParseException {
+        return createSyncer(createOptions(cmd));
+    }
+
+    public static StarterOptions createOptions(CommandLine cmd) throws IOException, ParseException {
         StarterOptions options = new StarterOptions();
         options.set(cmd);
         if (cmd.hasOption(OPTION_RESET)) {
             LocalStorage.reset(options.getCachePath(), options.getCookiesPath());
         }
-        return createSyncer(options);
+        return options;
     }
 
     public static Syncer createSyncer(StarterOptions options) throws IOException {
@@ -101,13 +156,36 @@ public class Starter {
         if (options.getPathResolver() != null) {
             storage.setPathResolverDelegate(options.getPathResolver());
         }
-        JsoupStudipAdapter browser = new JsoupStudipAdapter(options.getUIAdapter(), options.getCookiesPath(), options.getTimeoutMs());
+        StudipAdapter adapter;
+        JsoupStudipAdapter browser = null;
+        if (options.getApiUrl() != null) {
+            adapter = new RestStudipAdapter(options.getUIAdapter(), options.getApiUrl(), options.getTimeoutMs());
+        } else {
+            browser = new JsoupStudipAdapter(options.getUIAdapter(), options.getCookiesPath(), options.getTimeoutMs());
+            browser.setStreamingParser(options.isStreamingParser());
+            adapter = browser;
+        }
 
         Syncer syncer = new Syncer(
-                browser,
+                adapter,
                 storage
         );
         syncer.setCheckLevel(options.getCheckLevel());
+        syncer.setFileGranular(options.isFileGranular());
+        syncer.setPrefetch(options.getPrefetch());
+        syncer.setFreshCheck(options.isFreshCheck());
+        syncer.setIncremental(options.isIncremental());
+        syncer.getScheduler().setLargeLanes(options.getLargeLanes());
+        syncer.getScheduler().setSmallLanes(options.getSmallLanes());
+        syncer.getDownloader().setSegments(options.getSegments());
+        syncer.getDownloader().setSegmentThreshold(options.getSegmentThreshold());
+        if (options.getStatePath() != null) {
+            syncer.getDownloader().setStaging(new StagingArea(options.getStatePath().resolve("parts")));
+            syncer.setValidators(new ValidatorStore(options.getStatePath().resolve("validators.json")));
+            if (browser != null) {
+                browser.setPageCache(new PageCache(options.getStatePath().resolve("pages")));
+            }
+        }
         if (options.isPersitent()) {
             storage.registerListener(new Storage.StorageListener() {
                 @Override
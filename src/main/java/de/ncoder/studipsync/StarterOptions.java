@@ -26,6 +26,7 @@ package de.ncoder.studipsync;
 
 import de.ncoder.studipsync.storage.PathResolver;
 import de.ncoder.studipsync.storage.StandardPathResolver;
+import de.ncoder.studipsync.studip.rest.RestStudipAdapter;
 import de.ncoder.studipsync.ui.StandardUIAdapter;
 import de.ncoder.studipsync.ui.UIAdapter;
 import org.apache.commons.cli.CommandLine;
@@ -49,6 +50,7 @@ public class StarterOptions {
     public static final Options OPTIONS;
     public static final String OPTION_HELP = "h";
     public static final String OPTION_UI = "ui";
+    public static final String OPTION_API = "api";
     public static final String OPTION_OUT = "o";
     public static final String OPTION_RESET = "r";
     public static final String OPTION_PERSISTENT = "p";
@@ -58,6 +60,19 @@ public class StarterOptions {
     public static final String OPTION_PATH_RESOLVER = "n";
     public static final String OPTION_EXCLUDE = "x";
     public static final String OPTION_TIMEOUT = "t";
+    public static final String OPTION_FILE_GRANULAR = "f";
+    public static final String OPTION_LANES = "j";
+    public static final String OPTION_STATE = "s";
+    public static final String OPTION_SEGMENTS = "g";
+    public static final String OPTION_SEGMENT_THRESHOLD = "gt";
+    public static final String OPTION_PREFETCH = "pf";
+    public static final String OPTION_FRESH_CHECK = "fc";
+    public static final String OPTION_STREAMING_PARSER = "sp";
+    public static final String OPTION_INCREMENTAL = "i";
+    public static final String OPTION_DAEMON = "d";
+    public static final String OPTION_ADAPTIVE = "a";
+    public static final String OPTION_CONTROL = "cp";
+    public static final String OPTION_TRIGGER = "T";
 
     static {
         OPTIONS = new Options();
@@ -133,17 +148,129 @@ public class StarterOptions {
                 .longOpt("timeout")
                 .desc("Timeout in milliseconds for accessing studip.")
                 .build());
+        OPTIONS.addOption(Option.builder(OPTION_FILE_GRANULAR)
+                .longOpt("files")
+                .desc("Allow downloading changed files within folders one by one if that is cheaper than downloading a zip.")
+                .build());
+        OPTIONS.addOption(Option.builder(OPTION_STATE)
+                .hasArg()
+                .argName("dir")
+                .type(File.class)
+                .longOpt("state")
+                .desc("Directory used for keeping partial downloads, file validators and cached pages between runs.\n" +
+                        "Default: none, nothing of this is kept")
+                .build());
+        OPTIONS.addOption(Option.builder(OPTION_SEGMENTS)
+                .hasArg()
+                .argName("count")
+                .type(Number.class)
+                .longOpt("segments")
+                .desc("Number of parallel connections used for downloading a single large file, 1 to disable.\n" +
+                        "Default: " + Downloader.DEFAULT_SEGMENTS)
+                .build());
+        OPTIONS.addOption(Option.builder(OPTION_SEGMENT_THRESHOLD)
+                .hasArg()
+                .argName("MiB")
+                .type(Number.class)
+                .longOpt("segmentThreshold")
+                .desc("Minimum size of files downloaded over multiple connections.\n" +
+                        "Default: " + Downloader.DEFAULT_SEGMENT_THRESHOLD / 1024 / 1024)
+                .build());
+        OPTIONS.addOption(Option.builder(OPTION_LANES)
+                .hasArg()
+                .argName("large:small")
+                .longOpt("lanes")
+                .desc("Number of parallel downloads reserved for large files and for batches of small files.\n" +
+                        "Default: " + DownloadScheduler.DEFAULT_LARGE_LANES + ":" + DownloadScheduler.DEFAULT_SMALL_LANES)
+                .build());
+        OPTIONS.addOption(Option.builder(OPTION_FRESH_CHECK)
+                .longOpt("freshCheck")
+                .desc("List the files of each seminar again for checking it after synchronization, " +
+                        "instead of checking against the listing used for synchronizing.")
+                .build());
+        OPTIONS.addOption(Option.builder(OPTION_API)
+                .hasArg()
+                .optionalArg(true)
+                .argName("url")
+                .longOpt("api")
+                .desc("Get seminars and files from the REST API of StudIP instead of its web pages.\n" +
+                        "Default: " + RestStudipAdapter.DEFAULT_API_URL)
+                .build());
+        OPTIONS.addOption(Option.builder(OPTION_STREAMING_PARSER)
+                .longOpt("streamingParser")
+                .desc("Read the file listings in a single pass without building the whole page in memory.")
+                .build());
+        OPTIONS.addOption(Option.builder(OPTION_INCREMENTAL)
+                .longOpt("incremental")
+                .desc("When synchronizing seminars again while running as daemon, only read the files changed since " +
+                        "the last synchronization and only list the seminar completely if there are any. " +
+                        "Files deleted online won't be noticed then.")
+                .build());
+        OPTIONS.addOption(Option.builder(OPTION_PREFETCH)
+                .hasArg()
+                .argName("count")
+                .type(Number.class)
+                .longOpt("prefetch")
+                .desc("Number of following seminars whose downloads are listed while the current one is downloading, 0 to disable.\n" +
+                        "Default: " + Syncer.DEFAULT_PREFETCH)
+                .build());
+        OPTIONS.addOption(Option.builder(OPTION_DAEMON)
+                .hasArg()
+                .argName("minutes")
+                .type(Number.class)
+                .longOpt("daemon")
+                .desc("Keep running and synchronize again every given number of minutes, " +
+                        "reusing the session and the parsed pages of the previous runs.")
+                .build());
+        OPTIONS.addOption(Option.builder(OPTION_ADAPTIVE)
+                .hasArg()
+                .optionalArg(true)
+                .argName("requests/hour")
+                .type(Number.class)
+                .longOpt("adaptive")
+                .desc("In daemon mode, poll seminars depending on how often they change, " +
+                        "using at most the given number of requests per hour.\n" +
+                        "Default: " + SeminarPoller.DEFAULT_REQUESTS_PER_HOUR)
+                .build());
+        OPTIONS.addOption(Option.builder(OPTION_CONTROL)
+                .hasArg()
+                .optionalArg(true)
+                .argName("port")
+                .type(Number.class)
+                .longOpt("control")
+                .desc("In daemon mode, accept commands on the given local port. Otherwise the port used with --trigger.\n" +
+                        "Default: " + ControlServer.DEFAULT_PORT)
+                .build());
+        OPTIONS.addOption(Option.builder(OPTION_TRIGGER)
+                .longOpt("trigger")
+                .desc("Don't synchronize in this process, but let the running daemon synchronize and print its progress. " +
+                        "Further arguments select seminars by ID or name, all seminars are synchronized if there are none.")
+                .build());
     }
 
     // ------------------------------------------------------------------------
 
     private Path cachePath;
     private Path cookiesPath;
+    private Path statePath;
     private int timeoutMs;
     private Syncer.CheckLevel checkLevel;
     private UIAdapter uiAdapter;
     private PathResolver pathResolver;
     private boolean persitent;
+    private boolean fileGranular;
+    private int largeLanes = DownloadScheduler.DEFAULT_LARGE_LANES;
+    private int smallLanes = DownloadScheduler.DEFAULT_SMALL_LANES;
+    private int segments = Downloader.DEFAULT_SEGMENTS;
+    private long segmentThreshold = Downloader.DEFAULT_SEGMENT_THRESHOLD;
+    private boolean freshCheck;
+    private String apiUrl;
+    private boolean streamingParser;
+    private boolean incremental;
+    private int prefetch = Syncer.DEFAULT_PREFETCH;
+    private long daemonIntervalMs;
+    private int adaptiveRequestsPerHour;
+    private int controlPort = -1;
 
     public StarterOptions() {
         this(
@@ -177,6 +304,9 @@ public class StarterOptions {
         if (cmd.hasOption(OPTION_NO_COOKIES)) {
             setCookiesPath(null);
         }
+        if (cmd.hasOption(OPTION_STATE)) {
+            setStatePath(Paths.get(cmd.getOptionValue(OPTION_STATE)));
+        }
         if (cmd.hasOption(OPTION_TIMEOUT)) {
             try {
                 setTimeoutMs(Integer.parseInt(cmd.getOptionValue(OPTION_TIMEOUT)));
@@ -194,6 +324,52 @@ public class StarterOptions {
             setPathResolver(StandardPathResolver.getPathResolver(cmd.getOptionValue(OPTION_PATH_RESOLVER)));
         }
         setPersitent(cmd.hasOption(OPTION_PERSISTENT));
+        setFileGranular(cmd.hasOption(OPTION_FILE_GRANULAR));
+        setFreshCheck(cmd.hasOption(OPTION_FRESH_CHECK));
+        if (cmd.hasOption(OPTION_API)) {
+            setApiUrl(cmd.getOptionValue(OPTION_API, RestStudipAdapter.DEFAULT_API_URL));
+        }
+        setStreamingParser(cmd.hasOption(OPTION_STREAMING_PARSER));
+        setIncremental(cmd.hasOption(OPTION_INCREMENTAL));
+        try {
+            if (cmd.hasOption(OPTION_SEGMENTS)) {
+                setSegments(Math.max(1, Integer.parseInt(cmd.getOptionValue(OPTION_SEGMENTS))));
+            }
+            if (cmd.hasOption(OPTION_SEGMENT_THRESHOLD)) {
+                setSegmentThreshold(Long.parseLong(cmd.getOptionValue(OPTION_SEGMENT_THRESHOLD)) * 1024 * 1024);
+            }
+            if (cmd.hasOption(OPTION_PREFETCH)) {
+                setPrefetch(Math.max(0, Integer.parseInt(cmd.getOptionValue(OPTION_PREFETCH))));
+            }
+            if (cmd.hasOption(OPTION_DAEMON)) {
+                setDaemonIntervalMs(TimeUnit.MINUTES.toMillis(Long.parseLong(cmd.getOptionValue(OPTION_DAEMON))));
+            }
+            if (cmd.hasOption(OPTION_ADAPTIVE)) {
+                String budget = cmd.getOptionValue(OPTION_ADAPTIVE);
+                setAdaptiveRequestsPerHour(budget == null ? SeminarPoller.DEFAULT_REQUESTS_PER_HOUR : Integer.parseInt(budget));
+            }
+            if (cmd.hasOption(OPTION_CONTROL) || cmd.hasOption(OPTION_TRIGGER)) {
+                String port = cmd.getOptionValue(OPTION_CONTROL);
+                setControlPort(port == null ? ControlServer.DEFAULT_PORT : Integer.parseInt(port));
+            }
+        } catch (NumberFormatException e) {
+            throw new ParseException(e.getMessage());
+        }
+        if (cmd.hasOption(OPTION_LANES)) {
+            String[] lanes = cmd.getOptionValue(OPTION_LANES).split(":");
+            try {
+                if (lanes.length != 2) {
+                    throw new NumberFormatException(cmd.getOptionValue(OPTION_LANES) + " is not of the form large:small");
+                }
+                setLargeLanes(Integer.parseInt(lanes[0]));
+                setSmallLanes(Integer.parseInt(lanes[1]));
+            } catch (NumberFormatException e) {
+                throw new ParseException(e.getMessage());
+            }
+            if (getLargeLanes() < 0 || getSmallLanes() < 0 || getLargeLanes() + getSmallLanes() <= 0) {
+                throw new ParseException("At least one download lane is required");
+            }
+        }
     }
 
     public Path getCachePath() {
@@ -212,6 +388,14 @@ public class StarterOptions {
         this.cookiesPath = cookiesPath;
     }
 
+    public Path getStatePath() {
+        return statePath;
+    }
+
+    public void setStatePath(Path statePath) {
+        this.statePath = statePath;
+    }
+
     public int getTimeoutMs() {
         return timeoutMs;
     }
@@ -252,16 +436,161 @@ public class StarterOptions {
         this.persitent = persitent;
     }
 
+    public boolean isFileGranular() {
+        return fileGranular;
+    }
+
+    public void setFileGranular(boolean fileGranular) {
+        this.fileGranular = fileGranular;
+    }
+
+    public int getLargeLanes() {
+        return largeLanes;
+    }
+
+    public void setLargeLanes(int largeLanes) {
+        this.largeLanes = largeLanes;
+    }
+
+    public int getSmallLanes() {
+        return smallLanes;
+    }
+
+    public void setSmallLanes(int smallLanes) {
+        this.smallLanes = smallLanes;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    public long getSegmentThreshold() {
+        return segmentThreshold;
+    }
+
+    public void setSegmentThreshold(long segmentThreshold) {
+        this.segmentThreshold = segmentThreshold;
+    }
+
+    public boolean isFreshCheck() {
+        return freshCheck;
+    }
+
+    public void setFreshCheck(boolean freshCheck) {
+        this.freshCheck = freshCheck;
+    }
+
+    /**
+     * @return the URL of the REST API to use or null, if the web pages should be used
+     */
+    public String getApiUrl() {
+        return apiUrl;
+    }
+
+    public void setApiUrl(String apiUrl) {
+        this.apiUrl = apiUrl;
+    }
+
+    public boolean isStreamingParser() {
+        return streamingParser;
+    }
+
+    public void setStreamingParser(boolean streamingParser) {
+        this.streamingParser = streamingParser;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    public void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public boolean isDaemon() {
+        return daemonIntervalMs > 0;
+    }
+
+    public long getDaemonIntervalMs() {
+        return daemonIntervalMs;
+    }
+
+    public void setDaemonIntervalMs(long daemonIntervalMs) {
+        this.daemonIntervalMs = daemonIntervalMs;
+    }
+
+    public boolean isAdaptive() {
+        return adaptiveRequestsPerHour > 0;
+    }
+
+    public int getAdaptiveRequestsPerHour() {
+        return adaptiveRequestsPerHour;
+    }
+
+    public void setAdaptiveRequestsPerHour(int adaptiveRequestsPerHour) {
+        this.adaptiveRequestsPerHour = adaptiveRequestsPerHour;
+    }
+
+    public boolean isControlled() {
+        return controlPort >= 0;
+    }
+
+    public int getControlPort() {
+        return controlPort;
+    }
+
+    public void setControlPort(int controlPort) {
+        this.controlPort = controlPort;
+    }
+
+    /**
+     * @return the token file in the state directory, next to the cookies if there is none, or null if both are disabled
+     */
+    public Path getControlTokenPath() {
+        if (statePath != null) {
+            return statePath.resolve("control.token");
+        } else if (cookiesPath != null) {
+            return cookiesPath.resolveSibling("control.token");
+        } else {
+            return null;
+        }
+    }
+
     @Override
     public String toString() {
         return "Options{\n" +
                 "\tcachePath=" + cachePath + ",\n" +
                 "\tcookiesPath=" + cookiesPath + ",\n" +
+                "\tstatePath=" + statePath + ",\n" +
                 "\ttimeoutMs=" + timeoutMs + ",\n" +
                 "\tcheckLevel=" + checkLevel + ",\n" +
                 "\tuiAdapter=" + uiAdapter + ",\n" +
                 "\tpathResolver=" + pathResolver + ",\n" +
                 "\tpersitent=" + persitent + ",\n" +
+                "\tfileGranular=" + fileGranular + ",\n" +
+                "\tlanes=" + largeLanes + ":" + smallLanes + ",\n" +
+                "\tsegments=" + segments + ",\n" +
+                "\tsegmentThreshold=" + segmentThreshold + ",\n" +
+                "\tfreshCheck=" + freshCheck + ",\n" +
+                "\tapiUrl=" + apiUrl + ",\n" +
+                "\tstreamingParser=" + streamingParser + ",\n" +
+                "\tincremental=" + incremental + ",\n" +
+                "\tprefetch=" + prefetch + ",\n" +
+                "\tdaemonIntervalMs=" + daemonIntervalMs + ",\n" +
+                "\tadaptiveRequestsPerHour=" + adaptiveRequestsPerHour + ",\n" +
+                "\tcontrolPort=" + controlPort + ",\n" +
                 '}';
     }
 }
@@ -0,0 +1,170 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync;
+
+import de.ncoder.studipsync.data.Seminar;
+import de.ncoder.studipsync.storage.StorageLog;
+import de.ncoder.studipsync.studip.StudipException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a {@link Syncer} running and synchronizes again in a fixed interval.
+ * As the Syncer and its browser stay alive between runs, the session, the parsed pages
+ * and the warmed up JVM are reused and the login is only repeated once the session expired.
+ * If a {@link SeminarPoller} is set, each run only synchronizes the seminars that are due.
+ * The storage is flushed after each run, as a zip storage would otherwise only be written when the daemon stops.
+ */
+public class SyncDaemon {
+    private static final Logger log = LoggerFactory.getLogger(SyncDaemon.class);
+
+    private final Syncer syncer;
+    private final long intervalMs;
+    private final StorageLog storeLog = new StorageLog();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private SeminarPoller poller;
+    private int runs = 0;
+
+    public SyncDaemon(Syncer syncer, long intervalMs) {
+        this.syncer = syncer;
+        this.intervalMs = intervalMs;
+    }
+
+    public void start() {
+        syncer.getStorage().registerListener(storeLog);
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                runSync();
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+        log.info("Synchronizing every " + TimeUnit.MILLISECONDS.toMinutes(intervalMs) + " minutes");
+    }
+
+    /**
+     * Never throws, as any exception would cancel all following runs
+     */
+    private void runSync() {
+        runs++;
+        long start = System.currentTimeMillis();
+        storeLog.clear();
+        try {
+            if (poller == null) {
+                syncer.sync();
+            } else {
+                syncDue();
+            }
+            log.info(storeLog.getStatusMessage(syncer.getStorage().getRoot()));
+        } catch (StudipException e) {
+            log.error("Run " + runs + " failed", e);
+        } catch (CancellationException e) {
+            log.error("Login cancelled, stopping", e);
+            executor.shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Run " + runs + " failed unexpectedly", e);
+        }
+        try {
+            syncer.flush();
+        } catch (IOException e) {
+            log.error("Couldn't write the files of run " + runs + " to disk", e);
+        }
+        log.info("Finished run " + runs + " after " + (System.currentTimeMillis() - start) / 1000 + " s");
+    }
+
+    private void syncDue() throws StudipException, InterruptedException {
+        long now = System.currentTimeMillis();
+        List<Seminar> seminars = syncer.getSeminars();
+        List<Seminar> due = poller.select(seminars, now, intervalMs);
+        log.info(due.size() + " of " + seminars.size() + " seminars due");
+        //Unless told otherwise, every seminar failed and its previous listing mustn't be taken as this poll's
+        Collection<?> failed = due;
+        try {
+            if (!due.isEmpty()) {
+                syncer.sync(due);
+            }
+            failed = Collections.emptyList();
+        } catch (StudipException e) {
+            if (e.get(Syncer.KEY_FAILED_SEMINARS) instanceof Collection) {
+                failed = (Collection<?>) e.get(Syncer.KEY_FAILED_SEMINARS);
+            }
+            throw e;
+        } finally {
+            for (Seminar seminar : due) {
+                poller.observe(seminar, failed.contains(seminar) ? null : syncer.getListing(seminar), now);
+            }
+            try {
+                poller.save();
+            } catch (IOException e) {
+                log.warn("Couldn't save polling history", e);
+            }
+        }
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        while (!executor.awaitTermination(1, TimeUnit.DAYS)) {
+            //Keep waiting
+        }
+    }
+
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        syncer.getStorage().unregisterListener(storeLog);
+        syncer.close();
+    }
+
+    // ------------------------------------------------------------------------
+
+    public Syncer getSyncer() {
+        return syncer;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public SeminarPoller getPoller() {
+        return poller;
+    }
+
+    public void setPoller(SeminarPoller poller) {
+        this.poller = poller;
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync;
+
+import de.ncoder.studipsync.data.Download;
+import de.ncoder.studipsync.storage.Storage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Estimates the bytes and requests needed for synchronizing a top-level download
+ * and chooses the cheapest way of fetching it.
+ */
+public class SyncPlanner {
+    private static final Logger log = LoggerFactory.getLogger(SyncPlanner.class);
+
+    /**
+     * Size assumed for files whose size is unknown and no other sizes are known
+     */
+    public static final long DEFAULT_FILE_SIZE = 256 * 1024;
+    /**
+     * Bytes that could have been transferred in the time needed for one additional request
+     */
+    public static final long DEFAULT_REQUEST_COST = 64 * 1024;
+    /**
+     * Approximate size of the local header and central directory entry of a single file in a zip
+     */
+    public static final long ZIP_ENTRY_OVERHEAD = 128;
+
+    private final Storage storage;
+    private long requestCost = DEFAULT_REQUEST_COST;
+    private boolean filesAllowed;
+    private boolean folderZips = true;
+
+    public SyncPlanner(Storage storage) {
+        this.storage = storage;
+    }
+
+    public Plan plan(Download download, List<Download> downloads, boolean forceAbsolute) {
+        if (!download.isFolder()) {
+            return planFile(download, forceAbsolute);
+        }
+
+        //Collect files
+        List<Download> files = new ArrayList<>();
+        for (Download child : downloads) {
+            if (!child.isFolder() && child.isChildOf(download)) {
+                files.add(child);
+            }
+        }
+        long averageSize = getAverageSize(files);
+
+        //Find changed and outdated files
+        List<Download> changed = new ArrayList<>();
+        List<Download> outdated = new ArrayList<>();
+        long totalBytes = 0, changedBytes = 0, outdatedBytes = 0;
+        for (Download file : files) {
+            long size = estimateSize(file, averageSize);
+            totalBytes += size;
+            if (file.isChanged()) {
+                changed.add(file);
+                changedBytes += size;
+            }
+            if (file.isChanged() || isOutdated(file)) {
+                outdated.add(file);
+                outdatedBytes += size;
+            }
+        }
+
+        //Without zips, folders can only be fetched file by file
+        if (!folderZips) {
+            List<Download> fetch = forceAbsolute ? files : outdated;
+            if (fetch.isEmpty()) {
+                return new Plan(download, Strategy.Ignore, 0, 0, Collections.<Download>emptyList());
+            }
+            return new Plan(download, Strategy.Files, forceAbsolute ? totalBytes : outdatedBytes, fetch.size(), fetch);
+        }
+
+        //Choose cheapest strategy
+        Plan full = new Plan(download, Strategy.Full, totalBytes + files.size() * ZIP_ENTRY_OVERHEAD, 1, files);
+        if (forceAbsolute) {
+            return full;
+        }
+        if (outdated.isEmpty()) {
+            if (download.isChanged()) {
+                //Changed, but we can't tell what changed
+                return new Plan(download, Strategy.Diff, changedBytes, 1, changed);
+            } else {
+                return new Plan(download, Strategy.Ignore, 0, 0, Collections.<Download>emptyList());
+            }
+        }
+        List<Plan> candidates = new ArrayList<>();
+        candidates.add(full);
+        if (download.isChanged() && changed.size() == outdated.size()) {
+            //The diff only contains files marked as changed
+            candidates.add(new Plan(download, Strategy.Diff, changedBytes + changed.size() * ZIP_ENTRY_OVERHEAD, 1, changed));
+        }
+        if (filesAllowed) {
+            candidates.add(new Plan(download, Strategy.Files, outdatedBytes, outdated.size(), outdated));
+        }
+        Plan best = null;
+        for (Plan candidate : candidates) {
+            log.debug("\t\t" + candidate);
+            //Candidates are ordered by preference, so ties keep the former
+            if (best == null || candidate.getCost() < best.getCost()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private Plan planFile(Download download, boolean forceAbsolute) {
+        long size = estimateSize(download, DEFAULT_FILE_SIZE);
+        List<Download> files = Collections.singletonList(download);
+        if (forceAbsolute) {
+            return new Plan(download, Strategy.Full, size, 1, files);
+        } else if (download.isChanged()) {
+            return new Plan(download, Strategy.Diff, size, 1, files);
+        } else if (isOutdated(download)) {
+            return new Plan(download, Strategy.Full, size, 1, files);
+        } else {
+            return new Plan(download, Strategy.Ignore, 0, 0, Collections.<Download>emptyList());
+        }
+    }
+
+    /**
+     * @return true, if the local copy of the file is missing or older than the online version
+     */
+    public boolean isOutdated(Download file) {
+        try {
+            Path local = storage.resolve(file);
+            if (!Files.exists(local)) {
+                return true;
+            }
+            if (!file.isSizeMatching(Files.size(local))) {
+                return true;
+            }
+            return file.getLastModified() != null
+                    && Files.getLastModifiedTime(local).toMillis() < file.getLastModified().getTime();
+        } catch (IOException e) {
+            log.debug("Can't check local copy of " + file, e);
+            return true;
+        }
+    }
+
+    private static long getAverageSize(List<Download> files) {
+        long sum = 0;
+        int count = 0;
+        for (Download file : files) {
+            if (file.getSize() > 0) {
+                sum += file.getSize();
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : DEFAULT_FILE_SIZE;
+    }
+
+    private static long estimateSize(Download file, long fallback) {
+        return file.getSize() > 0 ? file.getSize() : fallback;
+    }
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        int exp = (int) (Math.log(bytes) / Math.log(1024));
+        return String.format("%.1f %siB", bytes / Math.pow(1024, exp), "KMGTPE".charAt(exp - 1));
+    }
+
+    // ------------------------------------------------------------------------
+
+    public long getRequestCost() {
+        return requestCost;
+    }
+
+    public void setRequestCost(long requestCost) {
+        this.requestCost = requestCost;
+    }
+
+    public boolean isFilesAllowed() {
+        return filesAllowed;
+    }
+
+    public void setFilesAllowed(boolean filesAllowed) {
+        this.filesAllowed = filesAllowed;
+    }
+
+    public boolean isFolderZips() {
+        return folderZips;
+    }
+
+    /**
+     * @param folderZips whether folders can be fetched as one zip, otherwise their files are always fetched one by one
+     */
+    public void setFolderZips(boolean folderZips) {
+        this.folderZips = folderZips;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public static enum Strategy {
+        /**
+         * Nothing changed
+         */
+        Ignore,
+        /**
+         * Fetch only the changed files in one zip
+         */
+        Diff,
+        /**
+         * Fetch everything in one zip
+         */
+        Full,
+        /**
+         * Fetch the outdated files one by one
+         */
+        Files
+    }
+
+    public class Plan {
+        private final Download download;
+        private final Strategy strategy;
+        private final long bytes;
+        private final int requests;
+        private final List<Download> files;
+
+        private Plan(Download download, Strategy strategy, long bytes, int requests, List<Download> files) {
+            this.download = download;
+            this.strategy = strategy;
+            this.bytes = bytes;
+            this.requests = requests;
+            this.files = files;
+        }
+
+        public Download getDownload() {
+            return download;
+        }
+
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        public long getEstimatedBytes() {
+            return bytes;
+        }
+
+        public int getEstimatedRequests() {
+            return requests;
+        }
+
+        public long getCost() {
+            return bytes + requests * requestCost;
+        }
+
+        /**
+         * @return the files that are expected to be transferred
+         */
+        public List<Download> getFiles() {
+            return files;
+        }
+
+        @Override
+        public String toString() {
+            return strategy + " ~" + formatBytes(bytes) + " in " + requests + " request" + (requests != 1 ? "s" : "")
+                    + " (" + files.size() + " file" + (files.size() != 1 ? "s" : "") + ")";
+        }
+    }
+}
@@ -27,6 +27,7 @@ package de.ncoder.studipsync;
 import de.ncoder.studipsync.data.Download;
 import de.ncoder.studipsync.data.Seminar;
 import de.ncoder.studipsync.storage.Storage;
+import de.ncoder.studipsync.storage.ValidatorStore;
 import de.ncoder.studipsync.studip.StudipAdapter;
 import de.ncoder.studipsync.studip.StudipException;
 import org.apache.commons.cli.ParseException;
@@ -42,27 +43,54 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.locks.ReentrantLock;
 
+import static de.ncoder.studipsync.SyncPlanner.formatBytes;
 import static de.ncoder.studipsync.studip.StudipAdapter.PAGE_DOWNLOADS;
 import static de.ncoder.studipsync.studip.StudipAdapter.PAGE_DOWNLOADS_LATEST;
 
 public class Syncer {
     private static final Logger log = LoggerFactory.getLogger(Syncer.class);
 
+    public static final int DEFAULT_PREFETCH = 2;
+    /**
+     * Key of the list of seminars that couldn't be synchronized in the exception thrown by {@link #sync(List)}
+     */
+    public static final String KEY_FAILED_SEMINARS = "sync.failedSeminars";
+
     private final StudipAdapter adapter;
     private final Storage storage;
+    private final SyncPlanner planner;
+    private final DownloadScheduler scheduler;
+    private final Downloader downloader;
     private final ReentrantLock browserLock = new ReentrantLock();
-    private Marker marker;
+    private final ReentrantLock storageLock = new ReentrantLock();
+    private ValidatorStore validators;
+    private boolean initialized = false;
+    private final Map<Seminar, List<Download>> listings = new HashMap<>();
+    private final Map<Seminar, Future<List<Download>>> prefetched = new HashMap<>();
+    private ExecutorService prefetchExecutor;
+    private int prefetch = DEFAULT_PREFETCH;
+    private boolean statelessListings = true;
+    private boolean freshCheck = false;
+    private boolean incremental = false;
     private CheckLevel checkLevel;
 
     public Syncer(StudipAdapter adapter, Storage storage) {
         this.adapter = adapter;
         this.storage = storage;
+        this.planner = new SyncPlanner(storage);
+        this.planner.setFolderZips(adapter.isFolderZipSupported());
+        this.downloader = new Downloader(adapter, browserLock);
+        this.scheduler = new DownloadScheduler(new DownloadScheduler.TransferHandler() {
+            @Override
+            public long transfer(DownloadScheduler.Transfer transfer) throws StudipException, IOException {
+                return Syncer.this.transfer(transfer);
+            }
+        });
     }
 
     public void init() throws StudipException {
@@ -70,12 +98,24 @@ public class Syncer {
         try {
             adapter.init();
             adapter.doLogin();
+            initialized = true;
         } finally {
             browserLock.unlock();
         }
     }
 
     public void close() throws IOException {
+        synchronized (prefetched) {
+            if (prefetchExecutor != null) {
+                prefetchExecutor.shutdownNow();
+                prefetchExecutor = null;
+            }
+        }
+        scheduler.close();
+        downloader.close();
+        if (validators != null) {
+            validators.save();
+        }
         browserLock.lock();
         try {
             adapter.close();
@@ -85,37 +125,53 @@ public class Syncer {
         storage.close();
     }
 
-    public synchronized void sync() throws StudipException, InterruptedException {
-        final List<Seminar> seminars;
+    /**
+     * Writes the synchronized files through to disk, without waiting for {@link #close()}.
+     * As it is synchronized like the sync methods, it never runs during a synchronization.
+     */
+    public synchronized void flush() throws IOException {
+        storage.flush();
+    }
 
+    /**
+     * Synchronizes all seminars. The browser is only initialized on the first call,
+     * following calls reuse the session and only log in again if it expired.
+     */
+    public synchronized void sync() throws StudipException, InterruptedException {
         //Access seminars
-        browserLock.lock();
-        try {
-            init();
-            seminars = getSeminars();
-        } finally {
-            browserLock.unlock();
-        }
+        final List<Seminar> seminars = getSeminars();
         log.info(seminars.size() + " seminars");
 
         //Sync seminars
         sync(seminars);
     }
 
+    /**
+     * @throws StudipException if any seminar couldn't be synchronized, the failed seminars are
+     *                         available as {@link #KEY_FAILED_SEMINARS}
+     */
     public synchronized void sync(List<Seminar> seminars) throws StudipException, InterruptedException {
         List<StudipException> exceptions = new ArrayList<>();
-        for (Seminar seminar : seminars) {
-            marker = MarkerFactory.getMarker(seminar.getID());
-            try {
-                syncSeminar(seminar, false);
-            } catch (StudipException e) {
-                log.error(marker, "Couldn't synchronize", e);
-                exceptions.add(e);
+        List<Seminar> failed = new ArrayList<>();
+        try {
+            for (int i = 0; i < seminars.size(); i++) {
+                Seminar seminar = seminars.get(i);
+                prefetch(seminars.subList(i + 1, Math.min(i + 1 + prefetch, seminars.size())));
+                try {
+                    syncSeminar(seminar, false);
+                } catch (StudipException e) {
+                    log.error(getMarker(seminar), "Couldn't synchronize", e);
+                    exceptions.add(e);
+                    failed.add(seminar);
+                }
             }
+        } finally {
+            cancelPrefetch();
         }
 
         if (!exceptions.isEmpty()) {
             StudipException ex = new StudipException("Not all seminars are in sync");
+            ex.put(KEY_FAILED_SEMINARS, failed);
             for (StudipException suppressed : exceptions) {
                 ex.addSuppressed(suppressed);
             }
@@ -123,11 +179,15 @@ public class Syncer {
         }
     }
 
-    public void syncSeminar(final Seminar seminar, boolean forceAbsolute) throws StudipException {
+    public void syncSeminar(final Seminar seminar, boolean forceAbsolute) throws StudipException, InterruptedException {
+        Marker marker = getMarker(seminar);
         try {
             //Find downloads
             log.info(marker, seminar.getFullName() + (forceAbsolute ? ", absolute" : ""));
             List<Download> downloads = getDownloads(seminar);
+            synchronized (listings) {
+                listings.put(seminar, downloads);
+            }
             log.info(marker, "\tFound " + downloads.size() + " downloadable file" + (downloads.size() != 1 ? "s" : ""));
             boolean wasAbsolute = syncDownloads(downloads, forceAbsolute);
 
@@ -145,45 +205,158 @@ public class Syncer {
     /**
      * @return wasAbsolute, true if at every download was absolutely synchronized
      */
-    public boolean syncDownloads(List<Download> downloads, boolean forceAbsolute) throws StudipException {
+    public boolean syncDownloads(List<Download> downloads, boolean forceAbsolute) throws StudipException, InterruptedException {
         boolean wasAbsolute = true;
+        //All downloads of a listing belong to the same seminar
+        Marker marker = downloads.isEmpty() ? null : getMarker(downloads.get(0));
+
+        //Plan downloads
+        Map<SyncPlanner.Plan, List<DownloadScheduler.Transfer>> plans = new LinkedHashMap<>();
+        List<DownloadScheduler.Transfer> transfers = new ArrayList<>();
         for (final Download download : downloads) {
             if (download.getLevel() == 0) {
+                SyncPlanner.Plan plan = planner.plan(download, downloads, forceAbsolute);
+                if (plan.getStrategy() != SyncPlanner.Strategy.Full) {
+                    wasAbsolute = false;
+                }
+                if (plan.getStrategy() == SyncPlanner.Strategy.Ignore) {
+                    //Nothing changed
+                    log.info(marker, "\tign: " + download.getFileName());
+                    continue;
+                }
                 try {
-                    final boolean downloadDiff;
-                    final InputStream src;
-                    if (forceAbsolute) {
-                        //Absolute forced
-                        downloadDiff = false;
-                        src = startDownload(download, false);
-                        log.info(marker, "\tabs: " + download.getFileName());
-                    } else if (download.isChanged()) {
-                        //Changed data
-                        downloadDiff = true;
-                        src = startDownload(download, true);
-                        log.info(marker, "\tpar: " + download.getFileName());
-                    } else {
-                        //Nothing changed
-                        downloadDiff = true;
-                        src = null;
-                        log.info(marker, "\tign: " + download.getFileName());
-                    }
-                    if (src != null) {
-                        storage.store(download, src, downloadDiff);
-                    }
-                    if (downloadDiff) {
-                        wasAbsolute = false;
-                    }
+                    checkSpace(plan);
                 } catch (IOException e) {
                     log.warn(marker, "Couldn't download " + download, e);
                     wasAbsolute = false;
+                    continue;
+                }
+                List<DownloadScheduler.Transfer> planTransfers = new ArrayList<>();
+                switch (plan.getStrategy()) {
+                    case Diff:
+                        //Changed data
+                        planTransfers.add(new DownloadScheduler.Transfer(download, true, true, plan.getEstimatedBytes()));
+                        break;
+                    case Full:
+                        //Absolute forced or cheaper
+                        planTransfers.add(new DownloadScheduler.Transfer(download, false, false, plan.getEstimatedBytes()));
+                        break;
+                    case Files:
+                        //Only some files changed
+                        long averageSize = plan.getEstimatedBytes() / plan.getFiles().size();
+                        for (Download file : plan.getFiles()) {
+                            long size = file.getSize() > 0 ? file.getSize() : averageSize;
+                            planTransfers.add(new DownloadScheduler.Transfer(file, false, true, size));
+                        }
+                        break;
+                }
+                plans.put(plan, planTransfers);
+                transfers.addAll(planTransfers);
+            }
+        }
+
+        //Execute downloads
+        try {
+            scheduler.run(transfers);
+        } finally {
+            for (Map.Entry<SyncPlanner.Plan, List<DownloadScheduler.Transfer>> entry : plans.entrySet()) {
+                SyncPlanner.Plan plan = entry.getKey();
+                long bytes = 0;
+                boolean failed = false;
+                for (DownloadScheduler.Transfer transfer : entry.getValue()) {
+                    bytes += transfer.getBytes();
+                    failed |= transfer.isFailed();
+                }
+                if (failed) {
+                    wasAbsolute = false;
+                }
+                String type = plan.getStrategy() == SyncPlanner.Strategy.Full ? "abs" :
+                        plan.getStrategy() == SyncPlanner.Strategy.Diff ? "par" : "fil";
+                log.info(marker, "\t" + type + ": " + plan.getDownload().getFileName()
+                        + " [" + plan + ", got " + formatBytes(bytes) + (failed ? ", FAILED" : "") + "]");
+            }
+            if (validators != null) {
+                try {
+                    validators.save();
+                } catch (IOException e) {
+                    log.warn(marker, "Couldn't save validators", e);
                 }
             }
         }
         return wasAbsolute;
     }
 
-    public void checkSeminar(Seminar seminar, boolean syncWasAbsolute) throws IOException, StudipException {
+    private void checkSpace(SyncPlanner.Plan plan) throws IOException {
+        if (plan.getEstimatedBytes() <= 0) {
+            return;
+        }
+        long usable = Files.getFileStore(storage.getRoot()).getUsableSpace();
+        if (usable < plan.getEstimatedBytes()) {
+            throw new IOException("Not enough space for " + plan + ", only " + formatBytes(usable) + " available");
+        }
+    }
+
+    /**
+     * Downloads to a local file first, so that the network transfers can run in parallel while storing is serialized.
+     *
+     * @return the number of bytes transferred
+     */
+    private long transfer(DownloadScheduler.Transfer transfer) throws StudipException, IOException {
+        Download download = transfer.getDownload();
+        boolean revalidate = validators != null && !transfer.isDiffOnly() && !download.isFolder();
+        ValidatorStore.Entry known = revalidate ? getValidators(download) : null;
+        Downloader.Result result = downloader.fetch(download, transfer.isDiffOnly(), known);
+        try {
+            storageLock.lock();
+            try {
+                if (result.isNotModified()) {
+                    log.debug(getMarker(download), "\tnot modified: " + download.getFileName());
+                    touch(download);
+                } else {
+                    long size = Files.size(result.getFile());
+                    storage.store(download, result.getFile(), transfer.isDiff());
+                    if (revalidate) {
+                        validators.put(download, new ValidatorStore.Entry(result.getETag(), result.getLastModified(), size));
+                    }
+                }
+            } finally {
+                storageLock.unlock();
+            }
+        } finally {
+            downloader.release(result);
+        }
+        return result.getBytes();
+    }
+
+    /**
+     * @return the validators of the previous download, if the local copy still is the file that was downloaded then
+     */
+    private ValidatorStore.Entry getValidators(Download download) throws IOException {
+        ValidatorStore.Entry known = validators.get(download);
+        if (known != null) {
+            Path local = storage.resolve(download);
+            if (!Files.isRegularFile(local) || Files.size(local) != known.getSize()) {
+                validators.remove(download);
+                return null;
+            }
+        }
+        return known;
+    }
+
+    /**
+     * Marks the unchanged local copy as up to date, so that it isn't considered outdated on the next run.
+     * Like newly stored files, it gets the current time, as the check requires local files to be newer than online.
+     */
+    private void touch(Download download) throws IOException {
+        Path local = storage.resolve(download);
+        if (download.getLastModifiedTime() != Download.UNKNOWN_TIME
+                && Files.getLastModifiedTime(local).toMillis() <= download.getLastModifiedTime()) {
+            Files.setLastModifiedTime(local, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+    }
+
+    public void checkSeminar(Seminar seminar, boolean syncWasAbsolute) throws IOException, StudipException, InterruptedException {
+        Marker marker = getMarker(seminar);
         if (!isSeminarInSync(seminar)) {
             log.info(marker, "NOT IN-SYNC");
             if (syncWasAbsolute) {
@@ -196,18 +369,36 @@ public class Syncer {
         }
     }
 
+    /**
+     * Checks against the listing of the last synchronization of the seminar.
+     * The downloads are only listed again if there is none or fresh checks are requested.
+     */
     public boolean isSeminarInSync(Seminar seminar) throws IOException, StudipException {
         if (!checkLevel.includes(CheckLevel.Count)) {
             return true;
         }
 
         //List downloads
-        final List<Download> downloads;
-        browserLock.lock();
-        try {
-            downloads = adapter.parseDownloads(PAGE_DOWNLOADS_LATEST, false);
-        } finally {
-            browserLock.unlock();
+        List<Download> listing = freshCheck ? null : getListing(seminar);
+        if (listing == null) {
+            listing = listDownloads(seminar, PAGE_DOWNLOADS_LATEST, false);
+        }
+        return isSeminarInSync(seminar, listing);
+    }
+
+    /**
+     * @param listing the downloads of the seminar, folders are ignored
+     */
+    public boolean isSeminarInSync(Seminar seminar, List<Download> listing) throws IOException {
+        Marker marker = getMarker(seminar);
+        if (!checkLevel.includes(CheckLevel.Count)) {
+            return true;
+        }
+        final List<Download> downloads = new ArrayList<>();
+        for (Download download : listing) {
+            if (!download.isFolder()) {
+                downloads.add(download);
+            }
         }
         if (downloads.isEmpty()) {
             //No downloads - nothing to do
@@ -253,6 +444,7 @@ public class Syncer {
             return true;
         }
         for (Download download : downloads) {
+            Marker marker = getMarker(download);
             //Find matching candidates
             List<Path> localCandidates = new LinkedList<>();
             for (Path local : localFiles) {
@@ -287,25 +479,211 @@ public class Syncer {
         return true;
     }
 
+    /**
+     * Initializes the browser on the first call. The listings of seminars that aren't returned any more are dropped.
+     */
     public List<Seminar> getSeminars() throws StudipException {
+        List<Seminar> seminars;
         browserLock.lock();
         try {
-            return adapter.parseSeminars();
+            if (!initialized) {
+                init();
+            }
+            seminars = adapter.parseSeminars();
         } finally {
             browserLock.unlock();
         }
+        synchronized (listings) {
+            listings.keySet().retainAll(seminars);
+        }
+        return seminars;
+    }
+
+    /**
+     * Uses the prefetched listing of the seminar, if there is one
+     */
+    public List<Download> getDownloads(Seminar seminar) throws StudipException, InterruptedException {
+        Future<List<Download>> future;
+        synchronized (prefetched) {
+            future = prefetched.remove(seminar);
+        }
+        if (future != null) {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                log.debug(getMarker(seminar), "Prefetching the downloads of " + seminar + " failed, trying again", e.getCause());
+            } catch (CancellationException e) {
+                log.debug(getMarker(seminar), "Prefetching the downloads of " + seminar + " was cancelled");
+            }
+        }
+        return fetchDownloads(seminar);
     }
 
-    public List<Download> getDownloads(Seminar seminar) throws StudipException {
+    /**
+     * In incremental mode, seminars that were already listed before are only listed completely again
+     * if any of their files changed since the newest file of the previous listing.
+     */
+    private List<Download> fetchDownloads(Seminar seminar) throws StudipException {
+        List<Download> previous = incremental ? getListing(seminar) : null;
+        Date since = previous != null ? getLastChange(previous) : null;
+        if (since != null) {
+            try {
+                if (!hasChanges(listChangedDownloads(seminar, since), previous, since)) {
+                    log.debug(getMarker(seminar), "No changes in " + seminar + " since " + since);
+                    return previous;
+                }
+            } catch (StudipException e) {
+                log.debug(getMarker(seminar), "Can't list the changed downloads of " + seminar + ", listing all", e);
+            }
+        }
+        return listDownloads(seminar, PAGE_DOWNLOADS, true);
+    }
+
+    /**
+     * @return the date of the last change of any file in the listing or null
+     */
+    private static Date getLastChange(List<Download> listing) {
+        long lastChange = Download.UNKNOWN_TIME;
+        for (Download download : listing) {
+            if (!download.isFolder()) {
+                lastChange = Math.max(lastChange, download.getLastModifiedTime());
+            }
+        }
+        return lastChange == Download.UNKNOWN_TIME ? null : new Date(lastChange);
+    }
+
+    /**
+     * @param changed the downloads changed at or after the given date
+     * @return true, if any of the changed downloads is newer or wasn't part of the previous listing
+     */
+    private static boolean hasChanges(List<Download> changed, List<Download> previous, Date since) {
+        for (Download download : changed) {
+            if (download.getLastModifiedTime() == Download.UNKNOWN_TIME || download.getLastModifiedTime() > since.getTime()
+                    || !previous.contains(download)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Like {@link #listDownloads(Seminar, String, boolean)}, but only lists the downloads changed since the given date
+     */
+    private List<Download> listChangedDownloads(Seminar seminar, Date since) throws StudipException {
+        if (statelessListings) {
+            try {
+                return adapter.parseChangedDownloads(seminar, since);
+            } catch (StudipException e) {
+                log.debug(getMarker(seminar), "Can't list changed downloads of " + seminar + " directly, selecting it", e);
+            }
+        }
+        browserLock.lock();
+        try {
+            if (!seminar.equals(adapter.getSelectedSeminar())) {
+                adapter.selectSeminar(seminar);
+            }
+            return adapter.parseChangedDownloads(since);
+        } finally {
+            browserLock.unlock();
+        }
+    }
+
+    /**
+     * Lists the downloads without selecting the seminar if the adapter supports it, so that
+     * listings don't need the browser lock and can run concurrently. Otherwise selects the seminar first.
+     */
+    private List<Download> listDownloads(Seminar seminar, String url, boolean structured) throws StudipException {
+        if (statelessListings) {
+            try {
+                return adapter.parseDownloads(seminar, url, structured);
+            } catch (StudipException e) {
+                log.debug(getMarker(seminar), "Can't list downloads of " + seminar + " directly, selecting it", e);
+            }
+        }
         browserLock.lock();
         try {
-            adapter.selectSeminar(seminar);
-            return adapter.parseDownloads(PAGE_DOWNLOADS, true);
+            //Others might have selected another seminar in the meantime
+            if (!seminar.equals(adapter.getSelectedSeminar())) {
+                adapter.selectSeminar(seminar);
+            }
+            return adapter.parseDownloads(url, structured);
         } finally {
             browserLock.unlock();
         }
     }
 
+    // --------------------------------PREFETCH--------------------------------
+
+    /**
+     * Lists the downloads of the given seminars in the background, so that the browser doesn't
+     * sit idle while the downloads of the current seminar are transferred.
+     */
+    private void prefetch(List<Seminar> seminars) {
+        if (seminars.isEmpty()) {
+            return;
+        }
+        synchronized (prefetched) {
+            for (final Seminar seminar : seminars) {
+                if (!prefetched.containsKey(seminar)) {
+                    prefetched.put(seminar, getPrefetchExecutor().submit(new Callable<List<Download>>() {
+                        @Override
+                        public List<Download> call() throws StudipException {
+                            return fetchDownloads(seminar);
+                        }
+                    }));
+                }
+            }
+        }
+    }
+
+    private void cancelPrefetch() {
+        synchronized (prefetched) {
+            for (Future<List<Download>> future : prefetched.values()) {
+                future.cancel(false);
+            }
+            prefetched.clear();
+        }
+    }
+
+    private ExecutorService getPrefetchExecutor() {
+        synchronized (prefetched) {
+            if (prefetchExecutor == null) {
+                prefetchExecutor = Executors.newFixedThreadPool(Math.max(1, prefetch), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Syncer prefetch");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            return prefetchExecutor;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * Log lines are tagged with the seminar they belong to. The marker is derived for each line instead of being
+     * kept in a field, as the downloads and listings of different seminars are handled by concurrent threads.
+     */
+    private static Marker getMarker(Seminar seminar) {
+        return seminar == null ? null : MarkerFactory.getMarker(seminar.getID());
+    }
+
+    private static Marker getMarker(Download download) {
+        return getMarker(download.getSeminar());
+    }
+
+    /**
+     * @return the downloads found by the last synchronization of the seminar or null
+     */
+    public List<Download> getListing(Seminar seminar) {
+        synchronized (listings) {
+            return listings.get(seminar);
+        }
+    }
+
     public InputStream startDownload(Download download, boolean diffOnly) throws StudipException, IOException {
         browserLock.lock();
         try {
@@ -323,6 +701,75 @@ public class Syncer {
         this.checkLevel = checkLevel;
     }
 
+    /**
+     * @return the estimated number of requests for checking a seminar with the current options without downloading
+     * anything: listing the folders, or only the latest files if incremental and nothing changed,
+     * selecting the seminar if listings aren't stateless and listing the latest files again for fresh checks
+     */
+    public int getRequestsPerSeminar() {
+        int requests = 1;
+        if (!statelessListings) {
+            requests++;
+        }
+        if (freshCheck) {
+            requests++;
+        }
+        return requests;
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * @param prefetch the number of following seminars whose downloads are listed in advance, 0 to disable
+     */
+    public void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public boolean isStatelessListings() {
+        return statelessListings;
+    }
+
+    /**
+     * @param statelessListings whether downloads may be listed without selecting the seminar first
+     */
+    public void setStatelessListings(boolean statelessListings) {
+        this.statelessListings = statelessListings;
+    }
+
+    public boolean isFreshCheck() {
+        return freshCheck;
+    }
+
+    /**
+     * @param freshCheck whether seminars are listed again for checking them after synchronization
+     */
+    public void setFreshCheck(boolean freshCheck) {
+        this.freshCheck = freshCheck;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @param incremental whether seminars listed before are only listed again if their files changed since,
+     *                    which doesn't notice files that were deleted online
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isFileGranular() {
+        return planner.isFilesAllowed();
+    }
+
+    public void setFileGranular(boolean fileGranular) {
+        planner.setFilesAllowed(fileGranular);
+    }
+
     public static enum CheckLevel implements Comparable<CheckLevel> {
         None,
         Count,
@@ -356,6 +803,10 @@ public class Syncer {
         }
     }
 
+    public boolean isInitialized() {
+        return initialized;
+    }
+
     public StudipAdapter getAdapter() {
         return adapter;
     }
@@ -363,4 +814,24 @@ public class Syncer {
     public Storage getStorage() {
         return storage;
     }
+
+    public SyncPlanner getPlanner() {
+        return planner;
+    }
+
+    public DownloadScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public Downloader getDownloader() {
+        return downloader;
+    }
+
+    public ValidatorStore getValidators() {
+        return validators;
+    }
+
+    public void setValidators(ValidatorStore validators) {
+        this.validators = validators;
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.data;
+
+import java.text.ParseException;
+import java.util.GregorianCalendar;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Parses the timestamps of StudIP listings, e.g. "26.08.2013 - 20:38", in the default time zone.
+ * Unlike a shared SimpleDateFormat, this can be used by concurrent parsers. As the files of a folder are often
+ * uploaded at once, recently parsed timestamps are kept in a small cache.
+ */
+public class DateUtils {
+    public static final String LISTING_DATE_FORMAT = "dd.MM.yyyy - HH:mm";
+
+    private static final int CACHE_SIZE = 64;
+    private static final AtomicReferenceArray<CachedDate> cache = new AtomicReferenceArray<>(CACHE_SIZE);
+
+    private DateUtils() {
+    }
+
+    /**
+     * @return the timestamp in milliseconds since the epoch
+     * @throws ParseException if the string doesn't start with a date in the {@link #LISTING_DATE_FORMAT}
+     */
+    public static long parseListingDate(String string) throws ParseException {
+        int index = string.hashCode() & (CACHE_SIZE - 1);
+        CachedDate cached = cache.get(index);
+        if (cached != null && cached.string.equals(string)) {
+            return cached.time;
+        }
+        long time = parseListingDateUncached(string);
+        cache.lazySet(index, new CachedDate(string, time));
+        return time;
+    }
+
+    private static long parseListingDateUncached(String string) throws ParseException {
+        // day, month, year, hour, minute
+        int[] fields = new int[5];
+        int field = 0;
+        int digits = 0;
+        for (int i = 0; i < string.length() && field < fields.length; i++) {
+            char c = string.charAt(i);
+            if (c >= '0' && c <= '9') {
+                fields[field] = fields[field] * 10 + (c - '0');
+                digits++;
+                if (digits > 4) {
+                    throw new ParseException("Illegal date " + string, i);
+                }
+            } else if (digits > 0) {
+                field++;
+                digits = 0;
+            } else if (c != ' ' && c != '.' && c != '-' && c != ':') {
+                throw new ParseException("Illegal date " + string, i);
+            }
+        }
+        if (digits > 0) {
+            field++;
+        }
+        if (field < fields.length) {
+            throw new ParseException("Illegal date " + string, string.length());
+        }
+        int day = fields[0], month = fields[1], year = fields[2], hour = fields[3], minute = fields[4];
+        if (day < 1 || day > 31 || month < 1 || month > 12 || hour > 23 || minute > 59) {
+            throw new ParseException("Illegal date " + string, 0);
+        }
+        return new GregorianCalendar(year, month - 1, day, hour, minute).getTimeInMillis();
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static class CachedDate {
+        private final String string;
+        private final long time;
+
+        private CachedDate(String string, long time) {
+            this.string = string;
+            this.time = time;
+        }
+    }
+}
@@ -35,19 +35,40 @@ import java.net.URL;
 import java.net.URLDecoder;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static de.ncoder.studipsync.studip.StudipAdapter.*;
 
 public class Download implements Serializable {
     private static final Logger log = LoggerFactory.getLogger(Download.class);
-    private static final Map<URL, Download> instances = new HashMap<>();
-
-    private final URL url;
-    private final Map<String, String> urlParams;
-    private final URL diffUrl;
+    private static final Interner<Download> instances = new Interner<>();
+    /**
+     * The URLs of all downloads without their query, e.g. sendfile.php and folder.php, shared by all instances
+     */
+    private static final ConcurrentMap<String, URL> baseUrls = new ConcurrentHashMap<>();
+    /**
+     * Used by {@link #getLastModifiedTime()} if the date of the last modification is unknown
+     */
+    public static final long UNKNOWN_TIME = Long.MIN_VALUE;
+    /**
+     * Human-readable file size, e.g. "12 Bytes", "456 KB" or "1,2 MB"
+     */
+    public static final Pattern SIZE_PATTERN = Pattern.compile("(\\d+(?:[.,]\\d+)?)\\s*(Bytes?|B|kB|KB|MB|GB|TB)\\b");
+
+    /**
+     * The URLs are only built on request from the shared base URL and the parameters, which are stored as
+     * alternating keys and values in their original order, with interned keys.
+     */
+    private final URL baseUrl;
+    private final String[] urlParams;
+    private final String hash;
 
     private long size = -1;
-    private Date lastModified;
+    private long sizeTolerance = 0;
+    private long lastModified = UNKNOWN_TIME;
     private boolean isChanged;
 
     private int level = -1;
@@ -57,34 +78,122 @@ public class Download implements Serializable {
     private String displayName = "";
     private String displayDescription = "";
 
-    private Download(URL url) {
-        Map<String, String> urlParams = URLUtils.extractUrlParameters(url);
+    /**
+     * Derived from the URL, the display name and the parents, as these are needed for every lookup by path.
+     * The path is recomputed when the path of the parent changed.
+     */
+    private transient String fileName;
+    private transient CachedPath path;
+
+    private Download(URL url, Map<String, String> urlParams) {
         isChanged = Boolean.parseBoolean(urlParams.get(PARAM_NEWEST_ONLY));
+        urlParams.put(PARAM_NEWEST_ONLY, Boolean.toString(false));
 
-        // Newest
-        urlParams.put(PARAM_NEWEST_ONLY, Boolean.toString(true));
-        diffUrl = URLUtils.setUrlParameters(url, urlParams);
+        baseUrl = getBaseUrl(url);
+        this.urlParams = new String[urlParams.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, String> param : urlParams.entrySet()) {
+            this.urlParams[i++] = param.getKey().intern();
+            this.urlParams[i++] = param.getValue();
+        }
+        hash = createHash();
+    }
 
-        // General
-        urlParams.put(PARAM_NEWEST_ONLY, Boolean.toString(false));
-        this.url = URLUtils.setUrlParameters(url, urlParams);
+    private static URL getBaseUrl(URL url) {
+        String file = url.getRef() == null ? url.getPath() : url.getPath() + "#" + url.getRef();
+        String key = url.getProtocol() + "://" + url.getAuthority() + file;
+        URL baseUrl = baseUrls.get(key);
+        if (baseUrl == null) {
+            try {
+                baseUrl = new URL(url.getProtocol(), url.getHost(), url.getPort(), file);
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Illegal URL " + url, e);
+            }
+            URL previous = baseUrls.putIfAbsent(key, baseUrl);
+            if (previous != null) {
+                baseUrl = previous;
+            }
+        }
+        return baseUrl;
+    }
 
-        this.urlParams = Collections.unmodifiableMap(urlParams);
+    public static Download getDownload(final URL url) {
+        final Map<String, String> urlParams = URLUtils.extractUrlParameters(url);
+        return instances.intern(getKey(url, urlParams), new Interner.Loader<Download>() {
+            @Override
+            public Download create() {
+                return new Download(url, new LinkedHashMap<>(urlParams));
+            }
+
+            @Override
+            public boolean isValid(Download existing) {
+                return existing.isInstanceFor(url, urlParams);
+            }
+        });
+    }
+
+    private static String getKey(URL url, Map<String, String> urlParams) {
+        if (urlParams.containsKey(PARAM_FILE_ID)) {
+            return PARAM_FILE_ID + "=" + urlParams.get(PARAM_FILE_ID);
+        } else if (urlParams.containsKey(PARAM_FOLDER_ID)) {
+            return PARAM_FOLDER_ID + "=" + urlParams.get(PARAM_FOLDER_ID);
+        } else {
+            return url.toExternalForm();
+        }
+    }
+
+    /**
+     * @return true, if this download was created from the given URL, apart from the {@link #PARAM_NEWEST_ONLY} flag
+     * already used for its other URL, so a renamed or moved file with the same id gets a new instance
+     */
+    private boolean isInstanceFor(URL url, Map<String, String> urlParams) {
+        if (isChanged != Boolean.parseBoolean(urlParams.get(PARAM_NEWEST_ONLY))
+                || !baseUrl.getHost().equals(url.getHost()) || !baseUrl.getPath().equals(url.getPath())) {
+            return false;
+        }
+        int count = 0;
+        for (Map.Entry<String, String> param : urlParams.entrySet()) {
+            if (!param.getKey().equals(PARAM_NEWEST_ONLY)) {
+                if (!Objects.equals(param.getValue(), getUrlParameter(param.getKey()))) {
+                    return false;
+                }
+                count++;
+            }
+        }
+        return count == this.urlParams.length / 2 - 1;
     }
 
-    public static Download getDownload(URL url) {
-        if (!instances.containsKey(url)) {
-            instances.put(url, new Download(url));
+    private int indexOfUrlParameter(String key) {
+        for (int i = 0; i < urlParams.length; i += 2) {
+            if (urlParams[i].equals(key)) {
+                return i;
+            }
         }
-        return instances.get(url);
+        return -1;
+    }
+
+    private String getUrlParameter(String key) {
+        int index = indexOfUrlParameter(key);
+        return index < 0 ? null : urlParams[index + 1];
+    }
+
+    private URL createUrl(boolean newestOnly) {
+        String[] params = urlParams.clone();
+        params[indexOfUrlParameter(PARAM_NEWEST_ONLY) + 1] = Boolean.toString(newestOnly);
+        return URLUtils.setUrlParameters(baseUrl, params);
     }
 
     public static Download getDownload(String url, String name, String lastModified, String size) throws StudipException {
+        return getDownload(url, name, lastModified, size, "");
+    }
+
+    public static Download getDownload(String url, String name, String lastModified, String size, String description) throws StudipException {
         try {
             Download download = getDownload(new URL(url));
             download.setDisplayName(name);
+            download.setDisplayDescription(description);
             download.setLastModified(parseDate(lastModified));
-            download.setSize(parseSize(size));
+            download.setSize(parseSize(size), parseSizeTolerance(size));
             return download;
         } catch (MalformedURLException e) {
             StudipException ex = new StudipException("Illegal URL " + url, e);
@@ -96,44 +205,99 @@ public class Download implements Serializable {
 
     // ------------------------------------------------------------------------
 
-    private static long parseSize(String string) {
+    private static Matcher matchSize(String string) {
         if (string == null || string.isEmpty()) {
+            return null;
+        }
+        Matcher matcher = SIZE_PATTERN.matcher(string);
+        if (!matcher.find()) {
+            log.debug("Illegal size " + string);
+            return null;
+        }
+        return matcher;
+    }
+
+    private static long getSizeUnit(String unit) {
+        switch (unit.charAt(0)) {
+            case 'k':
+            case 'K':
+                return 1L << 10;
+            case 'M':
+                return 1L << 20;
+            case 'G':
+                return 1L << 30;
+            case 'T':
+                return 1L << 40;
+            default:
+                return 1;
+        }
+    }
+
+    public static long parseSize(String string) {
+        Matcher matcher = matchSize(string);
+        if (matcher == null) {
             return -1;
         }
-        return 0; // TODO parse size (dependency "read size" in JsoupStudipAdapter.java)
+        double value = Double.parseDouble(matcher.group(1).replace(',', '.'));
+        return Math.round(value * getSizeUnit(matcher.group(2)));
     }
 
-    private static Date parseDate(String string) {
+    /**
+     * @return the maximum difference between the actual size and the rounded size given in the string
+     */
+    public static long parseSizeTolerance(String string) {
+        Matcher matcher = matchSize(string);
+        if (matcher == null) {
+            return 0;
+        }
+        String value = matcher.group(1);
+        int separator = Math.max(value.indexOf(','), value.indexOf('.'));
+        int decimals = separator < 0 ? 0 : value.length() - separator - 1;
+        return (long) (getSizeUnit(matcher.group(2)) / Math.pow(10, decimals) / 2);
+    }
+
+    private static long parseDate(String string) {
         if (string == null || string.isEmpty()) {
-            return null;
+            return UNKNOWN_TIME;
         }
         try {
-            return DATE_FORMAT.parse(string);
+            return DateUtils.parseListingDate(string);
         } catch (ParseException e) {
-            e.printStackTrace();
-            return null;
+            log.debug("Illegal date " + string, e);
+            return UNKNOWN_TIME;
         }
     }
 
     // ------------------------------------------------------------------------
 
-    public String getHash() {
-        String hash = urlParams.get(PARAM_FILE_ID);
+    private String createHash() {
+        String hash = getUrlParameter(PARAM_FILE_ID);
         if (hash == null) {
-            hash = urlParams.get(PARAM_FOLDER_ID);
+            hash = getUrlParameter(PARAM_FOLDER_ID);
         }
         if (hash == null) {
-            hash = "?" + Objects.hashCode(url);
+            hash = "?" + Objects.hashCode(getFullUrl());
         }
         return hash;
     }
 
+    public String getHash() {
+        return hash;
+    }
+
     public boolean isFolder() {
-        return urlParams.containsKey(PARAM_FOLDER_ID);
+        return indexOfUrlParameter(PARAM_FOLDER_ID) >= 0;
     }
 
     public String getFileName() {
-        String name = urlParams.get(PARAM_FILE_NAME);
+        if (fileName == null) {
+            fileName = createFileName();
+        }
+        return fileName;
+    }
+
+    private String createFileName() {
+        String name = getUrlParameter(PARAM_FILE_NAME);
         if (name == null) {
             name = getDisplayName();
         }
@@ -155,14 +319,44 @@ public class Download implements Serializable {
     }
 
     public void setSize(long size) {
+        setSize(size, 0);
+    }
+
+    public void setSize(long size, long sizeTolerance) {
         this.size = size;
+        this.sizeTolerance = sizeTolerance;
+    }
+
+    /**
+     * @return the maximum difference between the actual size and {@link #getSize()}, as StudIP only displays rounded sizes
+     */
+    public long getSizeTolerance() {
+        return sizeTolerance;
+    }
+
+    /**
+     * @return true, if the given size could be the size of this download
+     */
+    public boolean isSizeMatching(long size) {
+        return this.size < 0 || Math.abs(this.size - size) <= sizeTolerance;
     }
 
     public Date getLastModified() {
+        return lastModified == UNKNOWN_TIME ? null : new Date(lastModified);
+    }
+
+    /**
+     * @return the date of the last modification in milliseconds since the epoch or {@link #UNKNOWN_TIME}
+     */
+    public long getLastModifiedTime() {
         return lastModified;
     }
 
     public void setLastModified(Date lastModified) {
+        this.lastModified = lastModified == null ? UNKNOWN_TIME : lastModified.getTime();
+    }
+
+    public void setLastModified(long lastModified) {
         this.lastModified = lastModified;
     }
 
@@ -181,6 +375,7 @@ public class Download implements Serializable {
 
     public void setParent(Download parent) {
         this.parent = parent;
+        path = null;
         if (parent == null) {
             level = 0;
         } else {
@@ -194,9 +389,19 @@ public class Download implements Serializable {
 
     public void setLevel(int level) {
         parent = null;
+        path = null;
         this.level = level;
     }
 
+    public boolean isChildOf(Download folder) {
+        for (Download current = parent; current != null; current = current.parent) {
+            if (current == folder) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public int getLevel() {
         assert (level <= 0) == (parent == null);
         return level;
@@ -215,6 +420,10 @@ public class Download implements Serializable {
     }
 
     public void setDisplayName(String displayName) {
+        if (!Objects.equals(this.displayName, displayName)) {
+            fileName = null;
+            path = null;
+        }
         this.displayName = displayName;
     }
 
@@ -227,18 +436,30 @@ public class Download implements Serializable {
     }
 
     public URL getFullUrl() {
-        return url;
+        return createUrl(false);
     }
 
     public URL getDiffUrl() {
-        return diffUrl;
+        return createUrl(true);
     }
 
     public String getPath() {
-        if (getLevel() <= 0) {
-            return getFileName();
-        } else {
-            return getParent().getPath() + "/" + getFileName();
+        String parentPath = getLevel() <= 0 ? null : getParent().getPath();
+        CachedPath path = this.path;
+        if (path == null || path.parentPath != parentPath) {
+            path = new CachedPath(parentPath, parentPath == null ? getFileName() : parentPath + "/" + getFileName());
+            this.path = path;
+        }
+        return path.path;
+    }
+
+    private static class CachedPath {
+        private final String parentPath;
+        private final String path;
+
+        private CachedPath(String parentPath, String path) {
+            this.parentPath = parentPath;
+            this.path = path;
         }
     }
 
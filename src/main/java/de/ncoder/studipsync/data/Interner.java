@@ -0,0 +1,96 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.data;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shares one instance per identity key between concurrent parsers.
+ * The keys are plain strings, so that no {@link java.net.URL#hashCode()} or {@link java.net.URL#equals(Object)}
+ * and thereby no DNS lookup is involved. Instances are only weakly referenced, so that they are dropped as soon as
+ * no listing of any sync uses them any more.
+ */
+class Interner<V> {
+    private final ConcurrentMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ReferenceQueue<V> queue = new ReferenceQueue<>();
+
+    /**
+     * @return the instance interned for the given key, if it is still valid for the caller, otherwise a newly created
+     * instance that replaces the previous one
+     */
+    public V intern(String key, Loader<V> loader) {
+        expunge();
+        while (true) {
+            Entry<V> entry = entries.get(key);
+            V existing = entry == null ? null : entry.get();
+            if (existing != null && loader.isValid(existing)) {
+                return existing;
+            }
+            V created = loader.create();
+            Entry<V> replacement = new Entry<>(key, created, queue);
+            if (entry == null ? entries.putIfAbsent(key, replacement) == null : entries.replace(key, entry, replacement)) {
+                return created;
+            }
+        }
+    }
+
+    public int size() {
+        expunge();
+        return entries.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expunge() {
+        Entry<V> entry;
+        while ((entry = (Entry<V>) queue.poll()) != null) {
+            entries.remove(entry.key, entry);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    public static abstract class Loader<V> {
+        public abstract V create();
+
+        /**
+         * @return false, if the interned instance doesn't represent the requested one any more and should be replaced
+         */
+        public boolean isValid(V existing) {
+            return true;
+        }
+    }
+
+    private static class Entry<V> extends WeakReference<V> {
+        private final String key;
+
+        private Entry(String key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+}
@@ -29,14 +29,13 @@ import de.ncoder.studipsync.studip.StudipException;
 import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
 import static de.ncoder.studipsync.studip.StudipAdapter.PARAM_SEMINAR_SELECTION;
 
 public class Seminar implements Serializable {
-    private static final Map<URL, Seminar> instances = new HashMap<>();
+    private static final Interner<Seminar> instances = new Interner<>();
 
     private final URL url;
     private final Map<String, String> urlParams;
@@ -44,16 +43,22 @@ public class Seminar implements Serializable {
     private String name;
     private String description;
 
-    private Seminar(URL url) {
-        urlParams = URLUtils.extractUrlParameters(url);
+    private Seminar(URL url, Map<String, String> urlParams) {
+        this.urlParams = urlParams;
         this.url = url;
     }
 
-    public static Seminar getSeminar(URL url) {
-        if (!instances.containsKey(url)) {
-            instances.put(url, new Seminar(url));
-        }
-        return instances.get(url);
+    public static Seminar getSeminar(final URL url) {
+        final Map<String, String> urlParams = URLUtils.extractUrlParameters(url);
+        String key = urlParams.containsKey(PARAM_SEMINAR_SELECTION)
+                ? PARAM_SEMINAR_SELECTION + "=" + urlParams.get(PARAM_SEMINAR_SELECTION)
+                : url.toExternalForm();
+        return instances.intern(key, new Interner.Loader<Seminar>() {
+            @Override
+            public Seminar create() {
+                return new Seminar(url, urlParams);
+            }
+        });
     }
 
     public static Seminar getSeminar(String url, String name, String description) throws StudipException {
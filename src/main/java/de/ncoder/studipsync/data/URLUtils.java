@@ -28,7 +28,8 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -44,24 +45,65 @@ public class URLUtils {
         return extractParameters(uri.getQuery());
     }
 
+    /**
+     * Splits the query in a single pass, keeping the order of the parameters.
+     * Parameters without "=" are mapped to null, so that they are rebuilt unchanged.
+     */
     public static Map<String, String> extractParameters(String query) {
-        String[] split = query.split("&");
-        HashMap<String, String> params = new HashMap<>();
-        for (String param : split) {
-            String[] tuple = param.split("=");
-            params.put(tuple[0], tuple[1]);
+        Map<String, String> params = new LinkedHashMap<>();
+        if (query == null) {
+            return params;
+        }
+        int length = query.length();
+        int start = 0;
+        while (start < length) {
+            int end = query.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                int separator = query.indexOf('=', start);
+                if (separator < 0 || separator > end) {
+                    params.put(query.substring(start, end), null);
+                } else {
+                    params.put(query.substring(start, separator), query.substring(separator + 1, end));
+                }
+            }
+            start = end + 1;
         }
         return params;
     }
 
     public static URL setUrlParameters(URL base, Map<String, String> params) {
+        StringBuilder file = new StringBuilder(base.getPath()).append('?');
+        appendParameters(file, params);
         try {
-            return new URL(base.getProtocol(), base.getHost(), base.getPort(), base.getPath() + "?" + joinParameters(params) + "#" + base.getRef());
+            return createUrl(base, file);
         } catch (MalformedURLException e) {
             throw new RuntimeException("Illegal URL generated from " + base + " with params " + params, e);
         }
     }
 
+    /**
+     * @param params alternating keys and values
+     */
+    public static URL setUrlParameters(URL base, String... params) {
+        StringBuilder file = new StringBuilder(base.getPath()).append('?');
+        for (int i = 0; i < params.length; i += 2) {
+            appendParameter(file, i == 0, params[i], params[i + 1]);
+        }
+        try {
+            return createUrl(base, file);
+        } catch (MalformedURLException e) {
+            throw new RuntimeException("Illegal URL generated from " + base + " with params " + Arrays.toString(params), e);
+        }
+    }
+
+    private static URL createUrl(URL base, StringBuilder file) throws MalformedURLException {
+        file.append('#').append(base.getRef());
+        return new URL(base.getProtocol(), base.getHost(), base.getPort(), file.toString());
+    }
+
     public static URI setUriParameters(URI base, Map<String, String> params) {
         try {
             return new URI(base.getScheme(), base.getUserInfo(), base.getHost(), base.getPort(), base.getPath(), joinParameters(params), base.getFragment());
@@ -72,12 +114,25 @@ public class URLUtils {
 
     public static String joinParameters(Map<String, String> params) {
         StringBuilder bob = new StringBuilder();
+        appendParameters(bob, params);
+        return bob.toString();
+    }
+
+    private static void appendParameters(StringBuilder bob, Map<String, String> params) {
+        boolean first = true;
         for (Entry<String, String> e : params.entrySet()) {
-            bob.append("&");
-            bob.append(e.getKey());
-            bob.append("=");
-            bob.append(e.getValue());
+            appendParameter(bob, first, e.getKey(), e.getValue());
+            first = false;
+        }
+    }
+
+    private static void appendParameter(StringBuilder bob, boolean first, String key, String value) {
+        if (!first) {
+            bob.append('&');
+        }
+        bob.append(key);
+        if (value != null) {
+            bob.append('=').append(value);
         }
-        return bob.substring(1);
     }
 }
@@ -44,9 +44,10 @@ public class LocalStorage implements Storage {
     private static final Logger log = LoggerFactory.getLogger(LocalStorage.class);
 
     private PathResolver resolverDelegate = StandardPathResolver.ByHash;
-    private final Path root;
+    private volatile Path root;
     private final List<StorageListener> listeners = new LinkedList<>();
     private transient FileSystem underlyingFS;
+    private transient URI underlyingUri;
 
     private LocalStorage(Path root) {
         this.root = root;
@@ -64,6 +65,7 @@ public class LocalStorage implements Storage {
         FileSystem cache = FileSystems.newFileSystem(uri, zipFSOptions(true));
         LocalStorage storage = new LocalStorage(cache.getPath("/"));
         storage.underlyingFS = cache;
+        storage.underlyingUri = uri;
         return storage;
     }
 
@@ -89,6 +91,19 @@ public class LocalStorage implements Storage {
         }
     }
 
+    /**
+     * A zip file system only writes its contents on closing, so it is closed and opened again.
+     * Paths resolved before can't be used any more afterwards.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (underlyingFS != null) {
+            underlyingFS.close();
+            underlyingFS = FileSystems.newFileSystem(underlyingUri, zipFSOptions(true));
+            root = underlyingFS.getPath("/");
+        }
+    }
+
     // --------------------------------STORAGE---------------------------------
 
     public void setPathResolverDelegate(PathResolver resolverDelegate) {
@@ -0,0 +1,170 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.storage;
+
+import de.ncoder.studipsync.data.Download;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Directory keeping partially downloaded files between runs, together with a journal entry
+ * containing the validators needed for resuming them.
+ */
+public class StagingArea {
+    private static final Logger log = LoggerFactory.getLogger(StagingArea.class);
+
+    private final Path root;
+
+    public StagingArea(Path root) throws IOException {
+        this.root = root;
+        Files.createDirectories(root);
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    private String getName(Download download, boolean diffOnly) {
+        return download.getHash().replaceAll("[^A-Za-z0-9_-]+", "_") + (diffOnly ? "-diff" : "-full");
+    }
+
+    public Path getPartFile(Download download, boolean diffOnly) {
+        return root.resolve(getName(download, diffOnly) + ".part");
+    }
+
+    private Path getJournalFile(Download download, boolean diffOnly) {
+        return root.resolve(getName(download, diffOnly) + ".json");
+    }
+
+    /**
+     * @return the journal entry of the partial file or null, if there is no usable partial file
+     */
+    public Entry getEntry(Download download, boolean diffOnly) {
+        Path part = getPartFile(download, diffOnly);
+        Path journal = getJournalFile(download, diffOnly);
+        if (!Files.isRegularFile(part) || !Files.isRegularFile(journal)) {
+            return null;
+        }
+        try (Reader r = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            JSONObject json = (JSONObject) new JSONParser().parse(r);
+            Entry entry = new Entry(
+                    (String) json.get("url"),
+                    (String) json.get("validator"),
+                    ((Number) json.get("total")).longValue(),
+                    ((Number) json.get("offset")).longValue()
+            );
+            // Bytes are appended in order, so the part file contains at least as many valid bytes as recorded
+            long size = Files.size(part);
+            if (size < entry.offset) {
+                log.debug("Partial file " + part + " is shorter than its journal entry, restarting");
+                return null;
+            }
+            entry.offset = size;
+            return entry;
+        } catch (IOException | org.json.simple.parser.ParseException | ClassCastException | NullPointerException e) {
+            log.warn("Illegal journal entry " + journal + ", restarting download", e);
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void putEntry(Download download, boolean diffOnly, Entry entry) throws IOException {
+        JSONObject json = new JSONObject();
+        json.put("url", entry.url);
+        json.put("validator", entry.validator);
+        json.put("total", entry.total);
+        json.put("offset", entry.offset);
+        try (Writer w = Files.newBufferedWriter(getJournalFile(download, diffOnly), StandardCharsets.UTF_8)) {
+            w.write(json.toJSONString());
+        }
+    }
+
+    /**
+     * Deletes the partial file and its journal entry
+     */
+    public void discard(Download download, boolean diffOnly) throws IOException {
+        Files.deleteIfExists(getJournalFile(download, diffOnly));
+        Files.deleteIfExists(getPartFile(download, diffOnly));
+    }
+
+    // ------------------------------------------------------------------------
+
+    public static class Entry {
+        private final String url;
+        private final String validator;
+        private final long total;
+        private long offset;
+
+        public Entry(String url, String validator, long total, long offset) {
+            this.url = url;
+            this.validator = validator;
+            this.total = total;
+            this.offset = offset;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return the ETag or Last-Modified date of the file the partial data belongs to
+         */
+        public String getValidator() {
+            return validator;
+        }
+
+        /**
+         * @return the size of the complete file or -1 if unknown
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * @return the number of bytes already downloaded
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public void setOffset(long offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public String toString() {
+            return url + " " + offset + "/" + total + " (" + validator + ")";
+        }
+    }
+}
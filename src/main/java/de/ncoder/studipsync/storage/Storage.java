@@ -42,6 +42,11 @@ public interface Storage {
 
     public void close() throws IOException;
 
+    /**
+     * Writes all changes through to disk, so that they aren't lost if the process is killed before {@link #close()}
+     */
+    public void flush() throws IOException;
+
     public void store(Download download, InputStream dataSrc, boolean isDiff) throws IOException;
 
     public void store(Download download, Path dataSrc, boolean isDiff) throws IOException;
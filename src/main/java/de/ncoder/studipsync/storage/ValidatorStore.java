@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.storage;
+
+import de.ncoder.studipsync.data.Download;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the ETag, Last-Modified date and size of downloaded files,
+ * so that later downloads can be made conditional.
+ */
+public class ValidatorStore {
+    private static final Logger log = LoggerFactory.getLogger(ValidatorStore.class);
+
+    private final Path file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean modified = false;
+
+    public ValidatorStore(Path file) {
+        this.file = file;
+        load();
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JSONObject json = (JSONObject) new JSONParser().parse(r);
+            for (Object o : json.entrySet()) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                JSONObject value = (JSONObject) e.getValue();
+                entries.put((String) e.getKey(), new Entry(
+                        (String) value.get("etag"),
+                        (String) value.get("lastModified"),
+                        ((Number) value.get("size")).longValue()
+                ));
+            }
+        } catch (IOException | org.json.simple.parser.ParseException | ClassCastException | NullPointerException e) {
+            log.warn("Illegal validators file " + file + ", ignoring it", e);
+            entries.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            JSONObject value = new JSONObject();
+            value.put("etag", e.getValue().etag);
+            value.put("lastModified", e.getValue().lastModified);
+            value.put("size", e.getValue().size);
+            json.put(e.getKey(), value);
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write(json.toJSONString());
+        }
+        modified = false;
+    }
+
+    public synchronized Entry get(Download download) {
+        return entries.get(download.getHash());
+    }
+
+    public synchronized void put(Download download, Entry entry) {
+        if (entry.etag == null && entry.lastModified == null) {
+            remove(download);
+        } else {
+            entries.put(download.getHash(), entry);
+            modified = true;
+        }
+    }
+
+    public synchronized void remove(Download download) {
+        if (entries.remove(download.getHash()) != null) {
+            modified = true;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    public static class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final long size;
+
+        public Entry(String etag, String lastModified, long size) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return size + " bytes" + (etag != null ? " etag " + etag : "") + (lastModified != null ? " modified " + lastModified : "");
+        }
+    }
+}
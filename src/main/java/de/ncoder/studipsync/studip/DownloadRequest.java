@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.studip;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Options for {@link StudipAdapter#startDownload(de.ncoder.studipsync.data.Download, DownloadRequest)}.
+ */
+public class DownloadRequest {
+    private final boolean diffOnly;
+    private long rangeStart = 0;
+    private long rangeEnd = -1;
+    private String ifRange;
+    private String ifNoneMatch;
+    private String ifModifiedSince;
+
+    public DownloadRequest(boolean diffOnly) {
+        this.diffOnly = diffOnly;
+    }
+
+    public boolean isDiffOnly() {
+        return diffOnly;
+    }
+
+    /**
+     * @param start first byte to request
+     * @param end   last byte to request (inclusive) or -1 for everything after start
+     */
+    public DownloadRequest range(long start, long end) {
+        this.rangeStart = start;
+        this.rangeEnd = end;
+        return this;
+    }
+
+    public long getRangeStart() {
+        return rangeStart;
+    }
+
+    public long getRangeEnd() {
+        return rangeEnd;
+    }
+
+    public boolean isRanged() {
+        return rangeStart > 0 || rangeEnd >= 0;
+    }
+
+    /**
+     * Only honor the range if the ETag or Last-Modified date of the file still equals the given validator,
+     * otherwise the whole file is sent.
+     */
+    public DownloadRequest ifRange(String validator) {
+        this.ifRange = validator;
+        return this;
+    }
+
+    public String getIfRange() {
+        return ifRange;
+    }
+
+    /**
+     * Only send the file if its ETag differs from the given one, otherwise the response is 304 Not Modified.
+     */
+    public DownloadRequest ifNoneMatch(String etag) {
+        this.ifNoneMatch = etag;
+        return this;
+    }
+
+    public String getIfNoneMatch() {
+        return ifNoneMatch;
+    }
+
+    /**
+     * Only send the file if it was modified after the given HTTP date, otherwise the response is 304 Not Modified.
+     */
+    public DownloadRequest ifModifiedSince(String date) {
+        this.ifModifiedSince = date;
+        return this;
+    }
+
+    public String getIfModifiedSince() {
+        return ifModifiedSince;
+    }
+
+    public boolean isConditional() {
+        return ifNoneMatch != null || ifModifiedSince != null;
+    }
+
+    /**
+     * Sets the headers for the range and the conditions of this request on the given connection
+     */
+    public void applyTo(HttpURLConnection con) {
+        if (isRanged()) {
+            con.setRequestProperty("Range", "bytes=" + rangeStart + "-" + (rangeEnd >= 0 ? rangeEnd : ""));
+            if (ifRange != null) {
+                con.setRequestProperty("If-Range", ifRange);
+            }
+        }
+        if (ifNoneMatch != null) {
+            con.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+        if (ifModifiedSince != null) {
+            con.setRequestProperty("If-Modified-Since", ifModifiedSince);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (diffOnly ? "diff" : "full") + (isRanged() ? " bytes=" + rangeStart + "-" + (rangeEnd >= 0 ? rangeEnd : "") : "")
+                + (ifRange != null ? " if " + ifRange : "")
+                + (ifNoneMatch != null ? " if-none-match " + ifNoneMatch : "")
+                + (ifModifiedSince != null ? " if-modified-since " + ifModifiedSince : "");
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.studip;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An opened download, consisting of the response status, the validators and the body.
+ */
+public class DownloadResponse implements Closeable {
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+    private final int status;
+    private final InputStream body;
+    private final long offset;
+    private final long length;
+    private final long totalLength;
+    private final String etag;
+    private final String lastModified;
+    private final boolean acceptRanges;
+    private ReadableByteChannel channel;
+
+    public DownloadResponse(int status, InputStream body, long offset, long length, long totalLength,
+                            String etag, String lastModified, boolean acceptRanges) {
+        this.status = status;
+        this.body = body;
+        this.offset = offset;
+        this.length = length;
+        this.totalLength = totalLength;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.acceptRanges = acceptRanges;
+    }
+
+    /**
+     * Reads the status and headers of the given connection and opens its body
+     */
+    public static DownloadResponse open(HttpURLConnection con) throws IOException {
+        int status = con.getResponseCode();
+        long length = con.getHeaderFieldLong("Content-Length", -1);
+        long offset = 0;
+        long total = length;
+        String range = con.getHeaderField("Content-Range");
+        if (status == HttpURLConnection.HTTP_PARTIAL && range != null) {
+            // Content-Range: bytes 21010-47021/47022
+            Matcher matcher = CONTENT_RANGE_PATTERN.matcher(range);
+            if (!matcher.matches()) {
+                con.disconnect();
+                throw new IOException("Illegal Content-Range " + range);
+            }
+            offset = Long.parseLong(matcher.group(1));
+            length = Long.parseLong(matcher.group(2)) - offset + 1;
+            total = "*".equals(matcher.group(3)) ? -1 : Long.parseLong(matcher.group(3));
+        }
+        // 416 Range Not Satisfiable has no usable body, other errors are thrown by getInputStream
+        InputStream body = status != 416 ? con.getInputStream() : null;
+        return new DownloadResponse(
+                status, body, offset, length, total,
+                con.getHeaderField("ETag"),
+                con.getHeaderField("Last-Modified"),
+                "bytes".equalsIgnoreCase(con.getHeaderField("Accept-Ranges"))
+        );
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * @return the body as channel, sharing its position with {@link #getBody()}
+     */
+    public ReadableByteChannel getChannel() {
+        if (channel == null && body != null) {
+            channel = Channels.newChannel(body);
+        }
+        return channel;
+    }
+
+    /**
+     * @return the position of the first byte of the body within the file
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the length of the body or -1 if unknown
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the length of the whole file or -1 if unknown
+     */
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    public boolean isPartial() {
+        return status == 206;
+    }
+
+    public boolean isNotModified() {
+        return status == 304;
+    }
+
+    public String getETag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the validator to use for If-Range requests, preferring strong ETags, or null if none is available
+     */
+    public String getValidator() {
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+
+    public boolean isAcceptingRanges() {
+        return acceptRanges;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (body != null) {
+            body.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return status + " bytes " + offset + "+" + length + "/" + totalLength + (etag != null ? " etag " + etag : "")
+                + (lastModified != null ? " modified " + lastModified : "");
+    }
+}
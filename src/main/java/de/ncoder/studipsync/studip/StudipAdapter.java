@@ -29,7 +29,7 @@ import de.ncoder.studipsync.data.Seminar;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
 import java.util.concurrent.CancellationException;
 
@@ -48,14 +48,13 @@ public interface StudipAdapter {
     public static final String PARAM_FOLDER_ID = "folder_id";
     public static final String PARAM_FILE_NAME = "file_name";
     public static final String PARAM_SEMINAR_SELECTION = "auswahl";
+    public static final String PARAM_COURSE_ID = "cid";
 
     public static final String[] URI_ILLEGAL_CHARS = new String[]{" ", "ä", "ö", "ü", "Ä", "Ö", "Ü", "ß", ":", "(", ")", "[", "]", "/", "\\"};
     public static final String[] URI_REPLACE_CHARS = new String[]{"_", "ae", "oe", "ue", "Ae", "Oe", "Ue", "ss", "", "", "", "", "", "", ""};
     public static final String URI_ENCODING = "ISO-8859-1";
     public static final String ZIP_ENCODING = "Cp1252";
 
-    public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("dd.MM.yyyy - HH:mm"); // 26.08.2013 - 20:38
-
     // ------------------------------------------------------------------------
 
     public void init() throws StudipException;
@@ -78,5 +77,36 @@ public interface StudipAdapter {
 
     public List<Download> parseDownloads(String downloadsUrl, boolean structured) throws StudipException;
 
+    /**
+     * Lists the downloads of the given seminar without depending on or changing the selected seminar,
+     * so that it can be called concurrently.
+     *
+     * @throws StudipException if the seminar can't be addressed directly, use {@link #selectSeminar(Seminar)} then
+     */
+    public List<Download> parseDownloads(Seminar seminar, String downloadsUrl, boolean structured) throws StudipException;
+
+    /**
+     * Lists the downloads of the selected seminar that changed since the given date, newest first.
+     * As {@link #PAGE_DOWNLOADS_LATEST} is ordered by the date of the last change, the listing is only
+     * read up to the first older download.
+     */
+    public List<Download> parseChangedDownloads(Date since) throws StudipException;
+
+    /**
+     * Lists the downloads of the given seminar that changed since the given date like
+     * {@link #parseChangedDownloads(Date)}, without depending on or changing the selected seminar.
+     *
+     * @throws StudipException if the seminar can't be addressed directly, use {@link #selectSeminar(Seminar)} then
+     */
+    public List<Download> parseChangedDownloads(Seminar seminar, Date since) throws StudipException;
+
+    /**
+     * @return true, if the server can pack a folder into a zip. Otherwise, the files of a folder have to be
+     * downloaded one by one.
+     */
+    public boolean isFolderZipSupported();
+
     public InputStream startDownload(Download download, boolean diffOnly) throws StudipException, IOException;
+
+    public DownloadResponse startDownload(Download download, DownloadRequest request) throws StudipException, IOException;
 }
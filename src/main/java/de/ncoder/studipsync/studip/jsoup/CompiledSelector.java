@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.studip.jsoup;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Collector;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A CSS query that is only parsed once and can then be evaluated against any number of elements.
+ * As the evaluators don't keep any state, a compiled selector can be shared between threads.
+ * <p/>
+ * {@link Element#select(String)} parses the query again on every call, but the query parser of jsoup
+ * isn't public, so it is accessed reflectively. If that isn't possible, the query is parsed on every call.
+ */
+class CompiledSelector {
+    private static final Logger log = LoggerFactory.getLogger(CompiledSelector.class);
+    private static final Method QUERY_PARSER;
+
+    static {
+        Method parse = null;
+        try {
+            parse = Class.forName("org.jsoup.select.QueryParser").getMethod("parse", String.class);
+            parse.setAccessible(true);
+        } catch (ClassNotFoundException | NoSuchMethodException | SecurityException e) {
+            log.debug("Can't access jsoup's query parser, selectors won't be compiled", e);
+            parse = null;
+        }
+        QUERY_PARSER = parse;
+    }
+
+    private final String query;
+    private final Evaluator evaluator;
+
+    private CompiledSelector(String query, Evaluator evaluator) {
+        this.query = query;
+        this.evaluator = evaluator;
+    }
+
+    public static CompiledSelector compile(String query) {
+        Evaluator evaluator = null;
+        if (QUERY_PARSER != null) {
+            try {
+                evaluator = (Evaluator) QUERY_PARSER.invoke(null, query);
+            } catch (IllegalAccessException e) {
+                log.debug("Can't compile selector " + query, e);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalArgumentException("Can't compile selector " + query, e.getCause());
+            }
+        }
+        return new CompiledSelector(query, evaluator);
+    }
+
+    public Elements select(Element root) {
+        if (evaluator == null) {
+            return root.select(query);
+        }
+        return Collector.collect(evaluator, root);
+    }
+
+    /**
+     * Like {@link Elements#select(String)}, the matches of all roots are returned in order and without duplicates
+     */
+    public Elements select(Elements roots) {
+        if (evaluator == null) {
+            return roots.select(query);
+        }
+        Set<Element> elements = new LinkedHashSet<>();
+        for (Element root : roots) {
+            elements.addAll(Collector.collect(evaluator, root));
+        }
+        return new Elements(elements);
+    }
+
+    @Override
+    public String toString() {
+        return query;
+    }
+}
@@ -42,6 +42,8 @@ import java.util.regex.Pattern;
  */
 public class DataUtil {
     private static final Pattern charsetPattern = Pattern.compile("(?i)\\bcharset=\\s*(?:\"|')?([^\\s,;\"']*)");
+    private static final Pattern metaCharsetPattern = Pattern.compile("(?i)<meta\\s[^>]*\\bcharset\\s*=\\s*[\"']?\\s*([^\\s,;\"'/>]+)");
+    static final int metaCharsetLookahead = 4096;
     static final String defaultCharset = "UTF-8"; // used if not found in header or meta charset
     private static final int bufferSize = 0x20000; // ~130K.
 
@@ -151,6 +153,31 @@ public class DataUtil {
         return doc;
     }
 
+    /**
+     * Finds the charset of a document without parsing it, by looking for a meta charset in its beginning.
+     *
+     * @param charsetName the charset from the content type header, used if it is set
+     * @return the charset to decode the document with
+     */
+    static String detectCharset(ByteBuffer byteData, String charsetName) {
+        if (charsetName != null) {
+            return charsetName;
+        }
+        int length = Math.min(byteData.remaining(), metaCharsetLookahead);
+        String head = new String(byteData.array(), byteData.arrayOffset() + byteData.position(), length, Charset.forName("ISO-8859-1"));
+        Matcher m = metaCharsetPattern.matcher(head);
+        if (m.find()) {
+            try {
+                if (Charset.isSupported(m.group(1))) {
+                    return m.group(1);
+                }
+            } catch (IllegalCharsetNameException e) {
+                //Fall through to default
+            }
+        }
+        return defaultCharset;
+    }
+
     /**
      * Read the input stream into a byte buffer.
      *
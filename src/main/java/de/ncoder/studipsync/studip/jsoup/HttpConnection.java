@@ -179,6 +179,35 @@ public class HttpConnection implements Connection {
         return this;
     }
 
+    /**
+     * Use the given cache for conditional GET requests.
+     */
+    public Connection cache(PageCache cache) {
+        Validate.isTrue(req instanceof Request, "Caching requires a HttpConnection.Request");
+        ((Request) req).cache = cache;
+        return this;
+    }
+
+    /**
+     * Set the key for caching the next requests or null for not caching them.
+     */
+    public Connection cacheKey(String key) {
+        Validate.isTrue(req instanceof Request, "Caching requires a HttpConnection.Request");
+        ((Request) req).cacheKey = key;
+        return this;
+    }
+
+    /**
+     * Don't read the body when executing, but leave the connection open for reading it from
+     * {@link Response#bodyReader()}, so that reading can stop before the end of the body.
+     * The response must be closed afterwards. Streamed requests are never cached.
+     */
+    public Connection streamBody(boolean streamBody) {
+        Validate.isTrue(req instanceof Request, "Streaming requires a HttpConnection.Request");
+        ((Request) req).streamBody = streamBody;
+        return this;
+    }
+
     public Document get() throws IOException {
         req.method(Method.GET);
         execute();
@@ -335,6 +364,9 @@ public class HttpConnection implements Connection {
         private boolean ignoreHttpErrors = false;
         private boolean ignoreContentType = false;
         private Parser parser;
+        private PageCache cache;
+        private String cacheKey;
+        private boolean streamBody = false;
 
         private Request() {
             timeoutMilliseconds = 3000;
@@ -411,9 +443,25 @@ public class HttpConnection implements Connection {
         public Parser parser() {
             return parser;
         }
+
+        public PageCache cache() {
+            return cache;
+        }
+
+        public String cacheKey() {
+            return cacheKey;
+        }
+
+        public boolean streamBody() {
+            return streamBody;
+        }
+
+        private boolean isCached() {
+            return cache != null && cacheKey != null && method == Connection.Method.GET && !streamBody;
+        }
     }
 
-    public static class Response extends HttpConnection.Base<Connection.Response> implements Connection.Response {
+    public static class Response extends HttpConnection.Base<Connection.Response> implements Connection.Response, Closeable {
         private static final int MAX_REDIRECTS = 20;
         private int statusCode;
         private String statusMessage;
@@ -423,6 +471,10 @@ public class HttpConnection implements Connection {
         private boolean executed = false;
         private int numRedirects = 0;
         private Connection.Request req;
+        private boolean unchanged = false;
+        private String contentHash;
+        private HttpURLConnection conn;
+        private InputStream bodyStream;
 
         Response() {
             super();
@@ -452,13 +504,36 @@ public class HttpConnection implements Connection {
             if (req.method() == Connection.Method.GET && req.data().size() > 0)
                 serialiseRequestUrl(req); // appends query string
             HttpURLConnection conn = createConnection(req);
-            Response res;
+
+            // only the originally requested page is cached, not the target of a redirect (e.g. the login page)
+            Request cacheReq = previousResponse == null && req instanceof Request && ((Request) req).isCached() ? (Request) req : null;
+            PageCache.Entry cached = cacheReq != null ? cacheReq.cache.get(cacheReq.cacheKey) : null;
+            if (cached != null) {
+                if (cached.getETag() != null)
+                    conn.setRequestProperty("If-None-Match", cached.getETag());
+                if (cached.getLastModified() != null)
+                    conn.setRequestProperty("If-Modified-Since", cached.getLastModified());
+            }
+
+            Response res = null;
             try {
                 conn.connect();
                 if (req.method() == Connection.Method.POST)
                     writePost(req.data(), conn.getOutputStream());
 
                 int status = conn.getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                    res = new Response(previousResponse);
+                    res.setupFromConnection(conn, previousResponse);
+                    res.req = req;
+                    res.contentType = cached.getContentType();
+                    res.byteData = ByteBuffer.wrap(cached.getBody());
+                    res.charset = DataUtil.getCharsetFromContentType(res.contentType);
+                    res.contentHash = cached.getHash();
+                    res.unchanged = true;
+                    res.executed = true;
+                    return res;
+                }
                 boolean needsRedirect = false;
                 if (status != HttpURLConnection.HTTP_OK) {
                     if (status == HttpURLConnection.HTTP_MOVED_TEMP || status == HttpURLConnection.HTTP_MOVED_PERM || status == HttpURLConnection.HTTP_SEE_OTHER)
@@ -501,16 +576,34 @@ public class HttpConnection implements Connection {
                             new BufferedInputStream(new GZIPInputStream(dataStream)) :
                             new BufferedInputStream(dataStream);
 
-                    res.byteData = DataUtil.readToByteBuffer(bodyStream, req.maxBodySize());
                     res.charset = DataUtil.getCharsetFromContentType(res.contentType); // may be null, readInputStream deals with it
+                    if (req instanceof Request && ((Request) req).streamBody) {
+                        res.bodyStream = bodyStream;
+                        res.conn = conn;
+                    } else {
+                        res.byteData = DataUtil.readToByteBuffer(bodyStream, req.maxBodySize());
+                    }
                 } finally {
-                    if (bodyStream != null) bodyStream.close();
-                    if (dataStream != null) dataStream.close();
+                    if (res.conn == null) {
+                        if (bodyStream != null) bodyStream.close();
+                        if (dataStream != null) dataStream.close();
+                    }
+                }
+
+                if (cacheReq != null && status == HttpURLConnection.HTTP_OK) {
+                    // without validators, the content hash still tells whether the page changed
+                    PageCache.Entry entry = new PageCache.Entry(res.header("ETag"), res.header("Last-Modified"), res.contentType, res.byteData.array());
+                    res.contentHash = entry.getHash();
+                    res.unchanged = cached != null && cached.getHash().equals(entry.getHash());
+                    if (!res.unchanged || entry.hasValidators())
+                        cacheReq.cache.put(cacheReq.cacheKey, entry);
                 }
             } finally {
                 // per Java's documentation, this is not necessary, and precludes keepalives. However in practise,
                 // connection errors will not be released quickly enough and can cause a too many open files error.
-                conn.disconnect();
+                // streamed responses are disconnected when they are closed.
+                if (res == null || res.conn == null)
+                    conn.disconnect();
             }
 
             res.executed = true;
@@ -533,8 +626,23 @@ public class HttpConnection implements Connection {
             return contentType;
         }
 
+        /**
+         * @return true, if the body is the same as the one previously cached for this request
+         */
+        public boolean isUnchanged() {
+            return unchanged;
+        }
+
+        /**
+         * @return the hash of the body, if the request was cached
+         */
+        public String contentHash() {
+            return contentHash;
+        }
+
         public Document parse() throws IOException {
             Validate.isTrue(executed, "Request must be executed (with .execute(), .get(), or .post() before parsing response");
+            readBody();
             Document doc = DataUtil.parseByteData(byteData, charset, url.toExternalForm(), req.parser());
             byteData.rewind();
             charset = doc.outputSettings().charset().name(); // update charset from meta-equiv, possibly
@@ -544,6 +652,7 @@ public class HttpConnection implements Connection {
         public String body() {
             Validate.isTrue(executed, "Request must be executed (with .execute(), .get(), or .post() before getting response body");
             // charset gets set from header on execute, and from meta-equiv on parse. parse may not have happened yet
+            readBodyUnchecked();
             String body;
             if (charset == null)
                 body = Charset.forName(DataUtil.defaultCharset).decode(byteData).toString();
@@ -553,11 +662,77 @@ public class HttpConnection implements Connection {
             return body;
         }
 
+        /**
+         * @return a reader for the body, for processing it without building a Document.
+         * If the body is streamed, it is read directly from the connection and can only be read once.
+         */
+        public Reader bodyReader() throws IOException {
+            Validate.isTrue(executed, "Request must be executed (with .execute(), .get(), or .post() before getting response body");
+            if (bodyStream != null) {
+                //Look for a meta charset without consuming the beginning of the stream
+                byte[] head = new byte[DataUtil.metaCharsetLookahead];
+                bodyStream.mark(head.length);
+                int length = 0;
+                int read;
+                while (length < head.length && (read = bodyStream.read(head, length, head.length - length)) >= 0) {
+                    length += read;
+                }
+                bodyStream.reset();
+                String charsetName = DataUtil.detectCharset(ByteBuffer.wrap(head, 0, length), charset);
+                return new InputStreamReader(bodyStream, Charset.forName(charsetName));
+            }
+            String charsetName = DataUtil.detectCharset(byteData, charset);
+            return new InputStreamReader(
+                    new ByteArrayInputStream(byteData.array(), byteData.arrayOffset() + byteData.position(), byteData.remaining()),
+                    Charset.forName(charsetName));
+        }
+
         public byte[] bodyAsBytes() {
             Validate.isTrue(executed, "Request must be executed (with .execute(), .get(), or .post() before getting response body");
+            readBodyUnchecked();
             return byteData.array();
         }
 
+        /**
+         * Reads the rest of a streamed body, so that it can be accessed like any other body
+         */
+        private void readBody() throws IOException {
+            if (bodyStream != null) {
+                try {
+                    byteData = DataUtil.readToByteBuffer(bodyStream, req.maxBodySize());
+                } finally {
+                    close();
+                }
+            }
+        }
+
+        private void readBodyUnchecked() {
+            try {
+                readBody();
+            } catch (IOException e) {
+                throw new IllegalStateException("Can't read body of " + url, e);
+            }
+        }
+
+        /**
+         * Stops reading a streamed body and releases its connection
+         */
+        @Override
+        public void close() {
+            if (bodyStream != null) {
+                try {
+                    bodyStream.close();
+                } catch (IOException ignored) {
+                    //Disconnecting anyway
+                }
+                bodyStream = null;
+            }
+            if (conn != null) {
+                conn.disconnect();
+                conn = null;
+            }
+        }
+
         // set up connection defaults, and details from request
         private static HttpURLConnection createConnection(Connection.Request req) throws IOException {
             HttpURLConnection conn = (HttpURLConnection) req.url().openConnection();
@@ -27,6 +27,8 @@ package de.ncoder.studipsync.studip.jsoup;
 import de.ncoder.studipsync.data.Download;
 import de.ncoder.studipsync.data.LoginData;
 import de.ncoder.studipsync.data.Seminar;
+import de.ncoder.studipsync.studip.DownloadRequest;
+import de.ncoder.studipsync.studip.DownloadResponse;
 import de.ncoder.studipsync.studip.StudipAdapter;
 import de.ncoder.studipsync.studip.StudipException;
 import de.ncoder.studipsync.ui.UIAdapter;
@@ -41,22 +43,34 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class JsoupStudipAdapter implements StudipAdapter {
     private static final Logger log = LoggerFactory.getLogger(JsoupStudipAdapter.class);
 
+    private static final CompiledSelector SELECT_LOGOUT = CompiledSelector.compile("#toolbar .toolbar_menu li:last-of-type a");
+    private static final CompiledSelector SELECT_REGISTER = CompiledSelector.compile("#register");
+    private static final CompiledSelector SELECT_SEMINAR_ROWS = CompiledSelector.compile("#content>table:first-of-type>tbody>tr");
+    private static final CompiledSelector SELECT_SEMINAR_CELLS = CompiledSelector.compile(">td");
+    private static final CompiledSelector SELECT_SEMINAR_INFO = CompiledSelector.compile(">td:nth-of-type(4)>a:first-of-type");
+    private static final CompiledSelector SELECT_SEMINAR_FONT = CompiledSelector.compile("font");
+    private static final CompiledSelector SELECT_DOWNLOAD_ROWS = CompiledSelector.compile("#content>table>tbody>tr:nth-of-type(2)>td:nth-of-type(2)>table>tbody>tr>td>table");
+    private static final CompiledSelector SELECT_DOWNLOAD_HEADS = CompiledSelector.compile(">tbody>tr>td.printhead");
+    private static final CompiledSelector SELECT_DOWNLOAD_INSETS = CompiledSelector.compile(">tbody>tr>td.blank img");
+    private static final CompiledSelector SELECT_DOWNLOAD_DESCRIPTION = CompiledSelector.compile(">tbody>tr>td.printcontent");
+    private static final CompiledSelector SELECT_LINKS = CompiledSelector.compile("a");
+    private static final CompiledSelector SELECT_TITLED_LINKS = CompiledSelector.compile("a[title]");
+
     private final UIAdapter ui;
     private final Path cookiesPath;
     private final int timeoutMs;
@@ -71,10 +85,14 @@ public class JsoupStudipAdapter implements StudipAdapter {
 
     // --------------------------------LIFECYCLE-------------------------------
 
+    /**
+     * Doesn't load any page, the cover page is only loaded if a full login is needed
+     */
     @Override
     public void init() throws StudipException {
         con = new HttpConnection();
-        navigate(PAGE_COVER);
+        con.cache(pageCache);
+        validatedPage = null;
     }
 
     @Override
@@ -85,31 +103,72 @@ public class JsoupStudipAdapter implements StudipAdapter {
     // --------------------------------BROWSER---------------------------------
 
     private HttpConnection con;
+    private Connection.Response response;
     private Document document;
+    private PageCache pageCache;
+    private final Map<String, ParsedPage<?>> parsedPages = new ConcurrentHashMap<>();
     private final List<NavigationListener> listeners = new ArrayList<>();
+    /**
+     * The page loaded for validating a restored session, which can be used once instead of loading it again
+     */
+    private String validatedPage;
+    /**
+     * The cookies of the session after the last navigation, used for requests outside of the browser
+     */
+    private volatile Map<String, String> sessionCookies = Collections.emptyMap();
+    private volatile boolean courseParameterSupported = true;
+    private boolean streamingParser = false;
+
+    private void setResponse(Connection.Response response) throws StudipException {
+        this.response = response;
+        this.document = null;
+        this.validatedPage = null;
+        this.sessionCookies = Collections.unmodifiableMap(new HashMap<>(con.request().cookies()));
+        URL url = response.url();
+        log.trace("NAV: " + url + (isUnchanged() ? " (unchanged)" : ""));
+        for (NavigationListener listener : listeners) {
+            listener.navigated(url);
+        }
+    }
 
-    private void setDocument(Document document) throws StudipException {
-        this.document = document;
-        try {
-            URL url = new URL(document.baseUri());
-            log.trace("NAV: " + url);
-            for (NavigationListener listener : listeners) {
-                listener.navigated(url);
+    /**
+     * The current page is only parsed when it is actually needed, so that unchanged pages whose
+     * parsed contents are still known don't need to be parsed again.
+     */
+    private Document getDocument() {
+        if (document == null && response != null) {
+            try {
+                document = response.parse();
+            } catch (IOException e) {
+                throw new IllegalStateException("Can't parse " + response.url(), e);
             }
-        } catch (MalformedURLException e) {
-            StudipException ex = new StudipException("Illegal URL " + document.baseUri(), e);
-            ex.put("studip.url", document.baseUri());
-            ex.put("studip.document", document);
-            throw ex;
         }
+        return document;
+    }
+
+    private boolean isUnchanged() {
+        return isUnchanged(response);
+    }
+
+    private static boolean isUnchanged(Connection.Response response) {
+        return response instanceof HttpConnection.Response && ((HttpConnection.Response) response).isUnchanged();
     }
 
     protected void navigate(String url) throws StudipException {
+        navigate(url, null);
+    }
+
+    /**
+     * @param cacheKey the key for caching the page or null if the page shouldn't be cached
+     */
+    protected void navigate(String url, String cacheKey) throws StudipException {
         try {
             con.url(url);
             con.timeout(timeoutMs);
+            con.method(Connection.Method.GET);
+            con.cacheKey(pageCache != null ? cacheKey : null);
             try {
-                setDocument(con.get());
+                setResponse(con.execute());
             } catch (IOException e) {
                 throw new StudipException("Can't navigate to " + url, e);
             }
@@ -121,11 +180,81 @@ public class JsoupStudipAdapter implements StudipAdapter {
         }
     }
 
+    /**
+     * @return the result of parsing the current page with the given key, if the page is unchanged since it was parsed
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T getParsed(String cacheKey) {
+        return getParsed(cacheKey, response);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getParsed(String cacheKey, Connection.Response response) {
+        ParsedPage<?> parsed = parsedPages.get(cacheKey);
+        if (parsed != null && isUnchanged(response) && parsed.hash.equals(((HttpConnection.Response) response).contentHash())) {
+            log.debug("Page " + cacheKey + " unchanged, not parsing it again");
+            return (T) parsed.value;
+        }
+        return null;
+    }
+
+    private void putParsed(String cacheKey, Object value) {
+        putParsed(cacheKey, response, value);
+    }
+
+    private void putParsed(String cacheKey, Connection.Response response, Object value) {
+        if (response instanceof HttpConnection.Response && ((HttpConnection.Response) response).contentHash() != null) {
+            parsedPages.put(cacheKey, new ParsedPage<>(((HttpConnection.Response) response).contentHash(), value));
+        }
+    }
+
+    private static class ParsedPage<T> {
+        private final String hash;
+        private final T value;
+
+        private ParsedPage(String hash, T value) {
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    public PageCache getPageCache() {
+        return pageCache;
+    }
+
+    public void setPageCache(PageCache pageCache) {
+        this.pageCache = pageCache;
+        if (con != null) {
+            con.cache(pageCache);
+        }
+    }
+
+    public boolean isStreamingParser() {
+        return streamingParser;
+    }
+
+    /**
+     * @param streamingParser whether download listings should be read with a {@link ListingScanner} instead of building a Document
+     */
+    public void setStreamingParser(boolean streamingParser) {
+        this.streamingParser = streamingParser;
+    }
+
+    @Override
+    public boolean isFolderZipSupported() {
+        return true;
+    }
+
     @Override
     public InputStream startDownload(Download download, boolean diffOnly) throws IOException, StudipException {
+        return startDownload(download, new DownloadRequest(diffOnly)).getBody();
+    }
+
+    @Override
+    public DownloadResponse startDownload(Download download, DownloadRequest request) throws IOException, StudipException {
         try {
             URL url;
-            if (diffOnly) {
+            if (request.isDiffOnly()) {
                 url = download.getDiffUrl();
             } else {
                 url = download.getFullUrl();
@@ -139,9 +268,10 @@ public class JsoupStudipAdapter implements StudipAdapter {
             }
             HttpURLConnection con = (HttpURLConnection) urlCon;
             con.setRequestProperty("Cookie", HttpConnection.Response.getRequestCookieString(this.con.request().cookies()));
-            return con.getInputStream();
+            request.applyTo(con);
+            return DownloadResponse.open(con);
         } catch (StudipException ex) {
-            ex.put("download.diffOnly", diffOnly);
+            ex.put("download.request", request);
             ex.put("download.download", download);
             throw ex;
         }
@@ -150,7 +280,7 @@ public class JsoupStudipAdapter implements StudipAdapter {
     public void displayWebsite() {
         try {
             Path tmp = Files.createTempFile("studip-dump", ".html");
-            Files.copy(new ByteArrayInputStream(document.outerHtml().getBytes()), tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.copy(new ByteArrayInputStream(getDocument().outerHtml().getBytes()), tmp, StandardCopyOption.REPLACE_EXISTING);
             log.info("Displaying " + con.url());
             ui.displayWebpage(tmp.toUri());
         } catch (IOException e) {
@@ -160,22 +290,35 @@ public class JsoupStudipAdapter implements StudipAdapter {
 
     // --------------------------------LOG IN----------------------------------
 
+    /**
+     * Tries to restore the session from the saved cookies first. The session is validated by loading the list of seminars,
+     * which is needed next anyway. Only if that fails, the cover and login pages are loaded and the user is prompted.
+     */
     @Override
     public boolean doLogin() throws CancellationException, StudipException {
         try {
-            navigate(PAGE_LOGIN);
             if (hasCookies()) {
                 restoreCookies();
-                navigate(PAGE_BASE);
-            } else {
-                log.info("Requesting login data.");
-                LoginData login = ui.requestLoginData();
-                if (login != null) {
-                    doLogin(login);
-                    login.clean();
-                } else {
-                    throw new CancellationException("Login cancelled by user");
+                navigate(PAGE_SEMINARS, PAGE_SEMINARS);
+                if (isLoggedIn()) {
+                    validatedPage = PAGE_SEMINARS;
+                    saveCookies();
+                    return true;
                 }
+                log.info("Restored session expired.");
+                deleteCookies();
+                con.request().cookies().clear();
+            }
+
+            navigate(PAGE_COVER);
+            navigate(PAGE_LOGIN);
+            log.info("Requesting login data.");
+            LoginData login = ui.requestLoginData();
+            if (login != null) {
+                doLogin(login);
+                login.clean();
+            } else {
+                throw new CancellationException("Login cancelled by user");
             }
 
             if (isLoggedIn()) {
@@ -188,7 +331,7 @@ public class JsoupStudipAdapter implements StudipAdapter {
         } catch (IOException e) {
             StudipException ex = new StudipException(e);
             ex.put("studip.cookiesPath", cookiesPath);
-            ex.put("studip.url", document == null ? "none" : document.baseUri());
+            ex.put("studip.url", response == null ? "none" : response.url());
             throw ex;
         }
     }
@@ -205,16 +348,17 @@ public class JsoupStudipAdapter implements StudipAdapter {
             con.header("Referer", "https://studip.uni-passau.de/studip/login.php");
 
             con.data("username", login.getUsername());
-            con.data("challenge", document.getElementById("challenge").val());
-            con.data("login_ticket", document.getElementById("login_ticket").val());
-            con.data("response", document.getElementById("response").val());
+            con.cacheKey(null);
+            con.data("challenge", getDocument().getElementById("challenge").val());
+            con.data("login_ticket", getDocument().getElementById("login_ticket").val());
+            con.data("response", getDocument().getElementById("response").val());
             con.data("resolution", "1366x768");
             con.data("submitbtn", "");
             con.data("password", new String(login.getPassword()));
             login.clean();
             try {
                 //FIXME check for password leaks
-                setDocument(con.post());
+                setResponse(con.execute());
             } catch (IOException e) {
                 throw new StudipException("Can't login", e);
             } finally {
@@ -231,7 +375,14 @@ public class JsoupStudipAdapter implements StudipAdapter {
 
     @Override
     public boolean isLoggedIn() {
-        Elements selected = document.select("#toolbar .toolbar_menu li:last-of-type a");
+        return isLoggedIn(getDocument());
+    }
+
+    static boolean isLoggedIn(Document document) {
+        if (document == null) {
+            return false;
+        }
+        Elements selected = SELECT_LOGOUT.select(document);
         return selected.size() == 1 && "Logout".equals(selected.get(0).text().trim());
     }
 
@@ -247,9 +398,14 @@ public class JsoupStudipAdapter implements StudipAdapter {
     public void selectSeminar(Seminar seminar) throws StudipException {
         try {
             navigate(String.format(PAGE_SELECT_SEMINAR, seminar.getHash()));
+            if (!isSeminarSelected(seminar) && !isLoggedIn()) {
+                //Session expired since the last navigation
+                ensureLoggedIn();
+                navigate(String.format(PAGE_SELECT_SEMINAR, seminar.getHash()));
+            }
             if (!isSeminarSelected(seminar)) {
                 StudipException ex = new StudipException("Could not select Seminar " + seminar);
-                ex.put("studip.url", document == null ? "none" : document.baseUri());
+                ex.put("studip.url", response == null ? "none" : response.url());
                 ex.put("studip.document", document);
                 throw ex;
             }
@@ -271,7 +427,11 @@ public class JsoupStudipAdapter implements StudipAdapter {
 
     @Override
     public boolean isSeminarSelected(Seminar seminar) {
-        Elements selected = document.select("#register");
+        return isSeminarSelected(getDocument(), seminar);
+    }
+
+    private static boolean isSeminarSelected(Document document, Seminar seminar) {
+        Elements selected = SELECT_REGISTER.select(document);
         return selected.size() == 1 && seminar.getFullName().equals(selected.get(0).text().trim());
     }
 
@@ -329,20 +489,33 @@ public class JsoupStudipAdapter implements StudipAdapter {
     public List<Seminar> parseSeminars() throws StudipException {
         ensureLoggedIn();
 
-        navigate(PAGE_SEMINARS);
+        if (!PAGE_SEMINARS.equals(validatedPage)) {
+            navigate(PAGE_SEMINARS, PAGE_SEMINARS);
+        }
+        validatedPage = null;
+        if (!isLoggedIn()) {
+            //Session expired since the last navigation
+            ensureLoggedIn();
+            navigate(PAGE_SEMINARS, PAGE_SEMINARS);
+        }
+        List<Seminar> cached = getParsed(PAGE_SEMINARS);
+        if (cached != null) {
+            return new ArrayList<>(cached);
+        }
 
-        Elements events = document.select("#content>table:first-of-type>tbody>tr");
+        Elements events = SELECT_SEMINAR_ROWS.select(getDocument());
         List<Seminar> seminars = new ArrayList<>();
         for (org.jsoup.nodes.Element event : events) {
-            if (event.select(">td").size() > 4) {
-                Elements info = event.select(">td:nth-of-type(4)>a:first-of-type");
-                Elements font = info.select("font");
+            if (SELECT_SEMINAR_CELLS.select(event).size() > 4) {
+                Elements info = SELECT_SEMINAR_INFO.select(event);
+                Elements font = SELECT_SEMINAR_FONT.select(info);
                 if (info.size() >= 1 && font.size() >= 2) {
                     Seminar seminar = Seminar.getSeminar(info.get(0).absUrl("href"), font.get(0).text().trim(), font.get(1).text().trim());
                     seminars.add(seminar);
                 }
             }
         }
+        putParsed(PAGE_SEMINARS, new ArrayList<>(seminars));
         log.debug("Parsed " + seminars.size() + " seminars.");
         log.trace(seminars.toString());
         return seminars;
@@ -354,37 +527,19 @@ public class JsoupStudipAdapter implements StudipAdapter {
             ensureLoggedIn();
             ensureCurrentSeminarSelected();
 
-            navigate(downloadsUrl);
-            Map<Integer, Download> stack = new HashMap<>();
-            List<Download> downloads = new ArrayList<>();
-
-            Elements rows = document.select("#content>table>tbody>tr:nth-of-type(2)>td:nth-of-type(2)>table>tbody>tr>td>table");
-            for (org.jsoup.nodes.Element row : rows) {
-                Elements content = row.select(">tbody>tr>td.printhead");
-                Elements insets = row.select(">tbody>tr>td.blank img");
-                if (content.size() >= 2) {
-                    Elements info = content.get(1).select("a");
-                    Elements link = content.get(2).select("a[title]");
-                    List<TextNode> time = content.get(2).textNodes();
-                    if (info.size() > 0 && link.size() > 0 && time.size() > 0) {
-                        Download download = Download.getDownload(
-                                link.get(0).absUrl("href"),
-                                info.get(0).text().trim(),
-                                time.get(time.size() - 1).text().trim().replace("\u00a0", ""),
-                                "");
-                        download.setSeminar(currentSeminar);
-                        int level = insets.size() - 3;
-                        if (level > 0) {
-                            download.setParent(stack.get(level - 1));
-                        } else {
-                            download.setLevel(level);
-                        }
-                        stack.put(download.getLevel(), download);
-                        downloads.add(download);
-                        //TODO read size, description
-                    }
+            String cacheKey = downloadsUrl + "@" + currentSeminar.getHash();
+            navigate(downloadsUrl, cacheKey);
+            List<ListingRow> rows = getParsed(cacheKey);
+            if (rows == null) {
+                if (streamingParser) {
+                    rows = new ArrayList<>();
+                    scanRows(response, rows);
+                } else {
+                    rows = parseRows(getDocument());
                 }
+                putParsed(cacheKey, Collections.unmodifiableList(rows));
             }
+            List<Download> downloads = createDownloads(currentSeminar, rows, structured);
             log.debug("Parsed " + downloads.size() + " downloads.");
             log.trace(downloads.toString());
             return downloads;
@@ -396,6 +551,246 @@ public class JsoupStudipAdapter implements StudipAdapter {
         }
     }
 
+    /**
+     * Lists the downloads of the seminar by passing its ID as course parameter instead of selecting it first.
+     * As neither the current page nor the selected seminar are changed, this method may be called concurrently
+     * with itself and with the navigation of the browser.
+     */
+    @Override
+    public List<Download> parseDownloads(Seminar seminar, String downloadsUrl, boolean structured) throws StudipException {
+        String url = downloadsUrl + "&" + PARAM_COURSE_ID + "=" + seminar.getHash();
+        try {
+            if (!courseParameterSupported) {
+                throw new StudipException("Listing downloads by course parameter is not supported");
+            }
+            HttpConnection con = new HttpConnection();
+            con.cache(pageCache);
+            con.cacheKey(pageCache != null ? url : null);
+            con.cookies(sessionCookies);
+            con.url(url);
+            con.timeout(timeoutMs);
+            con.method(Connection.Method.GET);
+            Connection.Response response;
+            try {
+                response = con.execute();
+            } catch (IOException e) {
+                throw new StudipException("Can't navigate to " + url, e);
+            }
+            log.trace("GET: " + url + (isUnchanged(response) ? " (unchanged)" : ""));
+
+            List<ListingRow> rows = getParsed(url, response);
+            if (rows != null) {
+                return createDownloads(seminar, rows, structured);
+            }
+            rows = new ArrayList<>();
+            boolean loggedIn, selected;
+            if (streamingParser) {
+                ListingScanner scanner = scanRows(response, rows);
+                loggedIn = scanner.isLoggedIn();
+                selected = seminar.getFullName().equals(scanner.getSelectedSeminar());
+            } else {
+                Document document;
+                try {
+                    document = response.parse();
+                } catch (IOException e) {
+                    throw new StudipException("Can't parse " + url, e);
+                }
+                loggedIn = isLoggedIn(document);
+                selected = loggedIn && isSeminarSelected(document, seminar);
+                if (selected) {
+                    rows = parseRows(document);
+                }
+            }
+            if (!loggedIn) {
+                throw new StudipException("Not logged in");
+            }
+            if (!selected) {
+                log.info("Course parameter is ignored, selecting seminars before listing their downloads");
+                courseParameterSupported = false;
+                throw new StudipException("Course parameter is ignored");
+            }
+            putParsed(url, response, Collections.unmodifiableList(rows));
+            List<Download> downloads = createDownloads(seminar, rows, structured);
+            log.debug("Parsed " + downloads.size() + " downloads of " + seminar + ".");
+            return downloads;
+        } catch (StudipException ex) {
+            ex.put("studip.seminar", seminar);
+            ex.put("parseDownloads.listUrl", url);
+            ex.put("parseDownloads.structured", structured);
+            throw ex;
+        }
+    }
+
+    @Override
+    public List<Download> parseChangedDownloads(Date since) throws StudipException {
+        try {
+            ensureLoggedIn();
+            ensureCurrentSeminarSelected();
+            List<Download> downloads = scanChangedDownloads(PAGE_DOWNLOADS_LATEST, currentSeminar, since);
+            if (downloads == null) {
+                throw new StudipException("Seminar " + currentSeminar + " isn't selected");
+            }
+            return downloads;
+        } catch (StudipException ex) {
+            ex.put("studip.seminar", currentSeminar);
+            ex.put("parseChangedDownloads.since", since);
+            throw ex;
+        }
+    }
+
+    @Override
+    public List<Download> parseChangedDownloads(Seminar seminar, Date since) throws StudipException {
+        String url = PAGE_DOWNLOADS_LATEST + "&" + PARAM_COURSE_ID + "=" + seminar.getHash();
+        try {
+            if (!courseParameterSupported) {
+                throw new StudipException("Listing downloads by course parameter is not supported");
+            }
+            List<Download> downloads = scanChangedDownloads(url, seminar, since);
+            if (downloads == null) {
+                log.info("Course parameter is ignored, selecting seminars before listing their downloads");
+                courseParameterSupported = false;
+                throw new StudipException("Course parameter is ignored");
+            }
+            return downloads;
+        } catch (StudipException ex) {
+            ex.put("studip.seminar", seminar);
+            ex.put("parseChangedDownloads.listUrl", url);
+            ex.put("parseChangedDownloads.since", since);
+            throw ex;
+        }
+    }
+
+    /**
+     * Streams the listing ordered by change date from the server and stops reading it at the first download
+     * that was last changed before the given date. The page is neither cached nor kept as current page.
+     * As the listing is flat, the place of the downloads in the folder hierarchy isn't changed, so that
+     * the previous structured listing stays valid if nothing changed.
+     *
+     * @return the changed downloads or null, if the listing isn't one of the given seminar
+     */
+    private List<Download> scanChangedDownloads(String url, final Seminar seminar, final Date since) throws StudipException {
+        HttpConnection con = new HttpConnection();
+        con.cookies(sessionCookies);
+        con.url(url);
+        con.timeout(timeoutMs);
+        con.method(Connection.Method.GET);
+        con.streamBody(true);
+        try (HttpConnection.Response response = (HttpConnection.Response) con.execute()) {
+            log.trace("GET: " + url + " (streamed)");
+            final List<Download> downloads = new ArrayList<>();
+            ListingScanner scanner = new ListingScanner(response.bodyReader(), response.url().toExternalForm(), new ListingScanner.Handler() {
+                @Override
+                public boolean onRow(ListingRow row) throws StudipException {
+                    Download download = createDownload(seminar, null, row);
+                    if (download.getLastModifiedTime() != Download.UNKNOWN_TIME && download.getLastModifiedTime() < since.getTime()) {
+                        return false;
+                    }
+                    downloads.add(download);
+                    return true;
+                }
+            });
+            boolean complete = scanner.scan();
+            if (!scanner.isLoggedIn()) {
+                throw new StudipException("Not logged in");
+            }
+            if (!seminar.getFullName().equals(scanner.getSelectedSeminar())) {
+                return null;
+            }
+            log.debug("Parsed " + downloads.size() + " downloads of " + seminar + " changed since " + since
+                    + (complete ? "" : ", skipped the older ones"));
+            return downloads;
+        } catch (IOException e) {
+            throw new StudipException("Can't read " + url, e);
+        }
+    }
+
+    static List<ListingRow> parseRows(Document document) {
+        List<ListingRow> rows = new ArrayList<>();
+        for (org.jsoup.nodes.Element row : SELECT_DOWNLOAD_ROWS.select(document)) {
+            Elements content = SELECT_DOWNLOAD_HEADS.select(row);
+            Elements insets = SELECT_DOWNLOAD_INSETS.select(row);
+            if (content.size() >= 3) {
+                Elements info = SELECT_LINKS.select(content.get(1));
+                Elements link = SELECT_TITLED_LINKS.select(content.get(2));
+                List<TextNode> time = content.get(2).textNodes();
+                if (info.size() > 0 && link.size() > 0 && time.size() > 0) {
+                    Elements description = SELECT_DOWNLOAD_DESCRIPTION.select(row);
+                    rows.add(new ListingRow(
+                            link.get(0).absUrl("href"),
+                            info.get(0).text().trim(),
+                            time.get(time.size() - 1).text().trim().replace("\u00a0", ""),
+                            content.get(2).text(),
+                            description.isEmpty() ? "" : description.get(0).text().trim(),
+                            insets.size()));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Reads the listing directly from the body of the response, without building a Document
+     *
+     * @param rows receives the rows of the listing
+     */
+    static ListingScanner scanRows(Connection.Response response, final List<ListingRow> rows) throws StudipException {
+        try {
+            Reader reader = response instanceof HttpConnection.Response
+                    ? ((HttpConnection.Response) response).bodyReader()
+                    : new StringReader(response.body());
+            ListingScanner scanner = new ListingScanner(reader, response.url().toExternalForm(), new ListingScanner.Handler() {
+                @Override
+                public boolean onRow(ListingRow row) {
+                    rows.add(row);
+                    return true;
+                }
+            });
+            scanner.scan();
+            return scanner;
+        } catch (IOException e) {
+            throw new StudipException("Can't parse " + response.url(), e);
+        }
+    }
+
+    /**
+     * @param structured whether the rows are those of the folder view, whose indentation gives the folder hierarchy.
+     *                   The downloads of flat listings are shared with the structured ones, so their place in the
+     *                   hierarchy is left as it is.
+     */
+    static List<Download> createDownloads(Seminar seminar, List<ListingRow> rows, boolean structured) throws StudipException {
+        Map<Integer, Download> stack = structured ? new HashMap<Integer, Download>() : null;
+        List<Download> downloads = new ArrayList<>(rows.size());
+        for (ListingRow row : rows) {
+            downloads.add(createDownload(seminar, stack, row));
+        }
+        return downloads;
+    }
+
+    /**
+     * Creates a download from the contents of a row of the listing and places it in the folder hierarchy
+     *
+     * @param stack the last download seen on each level or null, if the hierarchy shouldn't be changed
+     */
+    static Download createDownload(Seminar seminar, Map<Integer, Download> stack, ListingRow row) throws StudipException {
+        Download download = Download.getDownload(row.getUrl(), row.getName(), row.getTime(), findSize(row.getInfo()), row.getDescription());
+        download.setSeminar(seminar);
+        if (stack != null) {
+            int level = row.getLevel();
+            if (level > 0) {
+                download.setParent(stack.get(level - 1));
+            } else {
+                download.setLevel(level);
+            }
+            stack.put(download.getLevel(), download);
+        }
+        return download;
+    }
+
+    private static String findSize(String text) {
+        Matcher matcher = Download.SIZE_PATTERN.matcher(text.replace("\u00a0", " "));
+        return matcher.find() ? matcher.group() : "";
+    }
+
     // --------------------------------LISTENERS-------------------------------
 
     public static interface NavigationListener {
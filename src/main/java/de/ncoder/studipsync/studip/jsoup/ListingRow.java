@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.studip.jsoup;
+
+/**
+ * The contents of a row of a download listing, as found on the page.
+ * Downloads are shared between all listings, so the rows are kept instead of the downloads when a listing is cached.
+ * This way, the downloads can be set up again from the rows, even if another listing changed them in the meantime.
+ */
+public class ListingRow {
+    private final String url;
+    private final String name;
+    private final String time;
+    private final String info;
+    private final String description;
+    private final int insets;
+
+    /**
+     * @param insets the number of images used for indenting the row
+     */
+    public ListingRow(String url, String name, String time, String info, String description, int insets) {
+        this.url = url;
+        this.name = name;
+        this.time = time;
+        this.info = info;
+        this.description = description;
+        this.insets = insets;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTime() {
+        return time;
+    }
+
+    /**
+     * @return the text of the cell containing the date and the size
+     */
+    public String getInfo() {
+        return info;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getInsets() {
+        return insets;
+    }
+
+    /**
+     * @return the level of the row in the folder hierarchy, 0 for the top level
+     */
+    public int getLevel() {
+        return insets - 3;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("'%s' (%s, %s, level %d)", name, url, time, getLevel());
+    }
+}
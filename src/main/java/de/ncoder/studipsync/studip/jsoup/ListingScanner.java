@@ -0,0 +1,713 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.studip.jsoup;
+
+import de.ncoder.studipsync.studip.StudipException;
+import org.jsoup.helper.StringUtil;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * Extracts the rows of downloads from a folder listing page in a single pass over its tags, without building a Document.
+ * Only the few elements needed for matching the listing structure are tracked, so that memory usage doesn't
+ * grow with the size of the page. The results are the same as those of
+ * {@link JsoupStudipAdapter#parseRows(org.jsoup.nodes.Document)}, which finds the rows with
+ * <code>#content>table>tbody>tr:nth-of-type(2)>td:nth-of-type(2)>table>tbody>tr>td>table</code>.
+ */
+public class ListingScanner {
+    private static final Set<String> VOID_TAGS = new HashSet<>(Arrays.asList(
+            "area", "base", "basefont", "bgsound", "br", "col", "embed", "frame", "hr", "img", "input",
+            "keygen", "link", "meta", "param", "source", "track", "wbr"));
+    private static final Set<String> RAW_TEXT_TAGS = new HashSet<>(Arrays.asList(
+            "script", "style", "textarea", "title", "xmp", "noembed", "noframes", "plaintext"));
+    /**
+     * Start tags that implicitly close an open paragraph
+     */
+    private static final Set<String> CLOSES_P = new HashSet<>(Arrays.asList(
+            "address", "article", "aside", "blockquote", "center", "details", "dir", "div", "dl", "fieldset",
+            "figcaption", "figure", "footer", "header", "hgroup", "menu", "nav", "ol", "p", "section", "summary", "ul",
+            "h1", "h2", "h3", "h4", "h5", "h6", "pre", "listing", "form", "table", "hr"));
+    /**
+     * Elements that end the search for the element closed by an end tag
+     */
+    private static final Set<String> SCOPE_BOUNDARIES = new HashSet<>(Arrays.asList(
+            "html", "table", "td", "th", "caption", "marquee", "object", "applet", "button"));
+
+    /**
+     * Receives the rows in the order they appear on the page
+     */
+    public static interface Handler {
+        /**
+         * @return true to continue scanning, false to stop
+         */
+        public boolean onRow(ListingRow row) throws StudipException;
+    }
+
+    private final Reader in;
+    private final Handler handler;
+    private String baseUri;
+    private boolean baseUriSet = false;
+
+    private final char[] buffer = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+
+    private final List<Frame> stack = new ArrayList<>();
+    private final List<Capture> captures = new ArrayList<>();
+    private Row row;
+    private boolean stopped = false;
+    private Capture registerCapture;
+    private final Set<Capture> toolbarLinks = new LinkedHashSet<>();
+
+    public ListingScanner(Reader in, String baseUri, Handler handler) {
+        this.in = in;
+        this.baseUri = baseUri;
+        this.handler = handler;
+        stack.add(new Frame("#root", null, null));
+    }
+
+    /**
+     * @return false, if the handler stopped scanning before the end of the page
+     */
+    public boolean scan() throws StudipException, IOException {
+        if (peek() == '\uFEFF') {
+            pos++;
+        }
+        StringBuilder text = new StringBuilder();
+        int c;
+        while (!stopped && (c = read()) >= 0) {
+            if (c == '<' && isTagStart(peek())) {
+                if (text.length() > 0) {
+                    text(text.toString());
+                    text.setLength(0);
+                }
+                markup();
+            } else {
+                text.append((char) c);
+            }
+        }
+        if (!stopped && text.length() > 0) {
+            text(text.toString());
+        }
+        while (!stopped && stack.size() > 1) {
+            pop();
+        }
+        return !stopped;
+    }
+
+    /**
+     * @return true, if the only link in the last item of the toolbar menu is the logout link,
+     * like <code>#toolbar .toolbar_menu li:last-of-type a</code> selects it
+     */
+    public boolean isLoggedIn() {
+        return toolbarLinks.size() == 1 && "Logout".equals(toolbarLinks.iterator().next().result);
+    }
+
+    /**
+     * @return the full name of the seminar shown as selected on the page, or null
+     */
+    public String getSelectedSeminar() {
+        return registerCapture == null ? null : registerCapture.result;
+    }
+
+    // --------------------------------TOKENIZER-------------------------------
+
+    private int read() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos];
+    }
+
+    private boolean fill() throws IOException {
+        limit = in.read(buffer, 0, buffer.length);
+        pos = 0;
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isTagStart(int c) {
+        return c == '/' || c == '!' || c == '?' || Character.isLetter(c);
+    }
+
+    private void markup() throws IOException, StudipException {
+        int c = read();
+        if (c == '!') {
+            if (peek() == '-') {
+                read();
+                if (peek() == '-') {
+                    read();
+                    skipUntil("-->");
+                    text(null);
+                    return;
+                }
+            }
+            skipUntil(">");
+        } else if (c == '?') {
+            skipUntil(">");
+        } else if (c == '/') {
+            String name = readName(-1);
+            skipUntil(">");
+            if (!name.isEmpty()) {
+                endTag(name);
+            }
+        } else {
+            String name = readName(c);
+            Map<String, String> attributes = new HashMap<>();
+            boolean selfClosing = readAttributes(attributes);
+            startTag(name, attributes, selfClosing);
+            if (RAW_TEXT_TAGS.contains(name) && !selfClosing) {
+                skipRawText(name);
+                endTag(name);
+            }
+        }
+    }
+
+    private String readName(int first) throws IOException {
+        StringBuilder name = new StringBuilder();
+        if (first >= 0) {
+            name.append((char) first);
+        }
+        int c;
+        while ((c = peek()) >= 0 && !Character.isWhitespace(c) && c != '>' && c != '/') {
+            name.append((char) read());
+        }
+        return name.toString().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @return true, if the tag was self-closing
+     */
+    private boolean readAttributes(Map<String, String> attributes) throws IOException {
+        boolean selfClosing = false;
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '>') {
+                return selfClosing;
+            } else if (c == '/') {
+                selfClosing = true;
+            } else if (!Character.isWhitespace(c)) {
+                selfClosing = false;
+                StringBuilder name = new StringBuilder().append((char) c);
+                while ((c = peek()) >= 0 && !Character.isWhitespace(c) && c != '=' && c != '>' && c != '/') {
+                    name.append((char) read());
+                }
+                skipWhitespace();
+                String value = "";
+                if (peek() == '=') {
+                    read();
+                    skipWhitespace();
+                    value = readAttributeValue();
+                }
+                String key = name.toString().toLowerCase(Locale.ENGLISH);
+                if (!attributes.containsKey(key)) {
+                    attributes.put(key, Parser.unescapeEntities(value, true));
+                }
+            }
+        }
+        return selfClosing;
+    }
+
+    private String readAttributeValue() throws IOException {
+        StringBuilder value = new StringBuilder();
+        int quote = peek();
+        int c;
+        if (quote == '"' || quote == '\'') {
+            read();
+            while ((c = read()) >= 0 && c != quote) {
+                value.append((char) c);
+            }
+        } else {
+            while ((c = peek()) >= 0 && !Character.isWhitespace(c) && c != '>') {
+                value.append((char) read());
+            }
+        }
+        return value.toString();
+    }
+
+    private void skipWhitespace() throws IOException {
+        int c;
+        while ((c = peek()) >= 0 && Character.isWhitespace(c)) {
+            read();
+        }
+    }
+
+    private void skipUntil(String end) throws IOException {
+        int matched = 0;
+        int c;
+        while (matched < end.length() && (c = read()) >= 0) {
+            if (c == end.charAt(matched)) {
+                matched++;
+            } else {
+                matched = c == end.charAt(0) ? 1 : 0;
+            }
+        }
+    }
+
+    private void skipRawText(String name) throws IOException {
+        String end = "</" + name;
+        int matched = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            if (Character.toLowerCase(c) == end.charAt(matched)) {
+                matched++;
+                if (matched == end.length()) {
+                    skipUntil(">");
+                    return;
+                }
+            } else {
+                matched = c == '<' ? 1 : 0;
+            }
+        }
+    }
+
+    // --------------------------------TREE------------------------------------
+
+    private Frame top() {
+        return stack.get(stack.size() - 1);
+    }
+
+    private Frame parent(int generation) {
+        int index = stack.size() - 1 - generation;
+        return index >= 0 ? stack.get(index) : null;
+    }
+
+    private void startTag(String name, Map<String, String> attributes, boolean selfClosing) throws StudipException {
+        //Implicitly closed elements
+        if (CLOSES_P.contains(name)) {
+            closeInScope("p");
+        }
+        switch (name) {
+            case "td":
+            case "th":
+                closeInTable("td", "tr");
+                closeInTable("th", "tr");
+                break;
+            case "tr":
+                closeInTable("tr", "tbody", "thead", "tfoot");
+                break;
+            case "tbody":
+            case "thead":
+            case "tfoot":
+                closeInTable("tbody", "table");
+                closeInTable("thead", "table");
+                closeInTable("tfoot", "table");
+                break;
+            case "li":
+                closeInTable("li", "ul", "ol");
+                break;
+            case "base":
+                if (!baseUriSet && attributes.containsKey("href")) {
+                    baseUri = absUrl(baseUri, attributes.get("href"));
+                    baseUriSet = true;
+                }
+                break;
+        }
+        //Any element ends the current text node of the cell containing the date
+        if (row != null) {
+            row.lastTimeOpen = false;
+        }
+        if (name.equals("tr") && top().tag.equals("table")) {
+            push("tbody", null, null);
+        }
+
+        for (Capture capture : captures) {
+            capture.element(name);
+        }
+        if (VOID_TAGS.contains(name)) {
+            element(name, attributes);
+        } else {
+            Frame frame = push(name, attributes.get("id"), attributes.get("class"));
+            element(name, attributes);
+            opened(frame);
+        }
+    }
+
+    private Frame push(String name, String id, String classes) {
+        Frame parent = top();
+        Frame frame = new Frame(name, id, classes);
+        frame.nth = parent.countChild(name);
+        stack.add(frame);
+        return frame;
+    }
+
+    private void endTag(String name) throws StudipException {
+        for (int i = stack.size() - 1; i > 0; i--) {
+            Frame frame = stack.get(i);
+            if (frame.tag.equals(name)) {
+                while (stack.size() > i) {
+                    pop();
+                }
+                return;
+            } else if (SCOPE_BOUNDARIES.contains(frame.tag) && !name.equals("table")) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes the given element, if it is open within the current scope
+     */
+    private void closeInScope(String name) throws StudipException {
+        for (int i = stack.size() - 1; i > 0; i--) {
+            Frame frame = stack.get(i);
+            if (frame.tag.equals(name)) {
+                while (stack.size() > i) {
+                    pop();
+                }
+                return;
+            } else if (SCOPE_BOUNDARIES.contains(frame.tag)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes the given element, if it is open below any of the given containers
+     */
+    private void closeInTable(String name, String... containers) throws StudipException {
+        List<String> boundaries = Arrays.asList(containers);
+        for (int i = stack.size() - 1; i > 0; i--) {
+            Frame frame = stack.get(i);
+            if (frame.tag.equals(name)) {
+                while (stack.size() > i) {
+                    pop();
+                }
+                return;
+            } else if (boundaries.contains(frame.tag) || frame.tag.equals("table")) {
+                return;
+            }
+        }
+    }
+
+    private void pop() throws StudipException {
+        Frame frame = stack.remove(stack.size() - 1);
+        if (frame.capture != null) {
+            captures.remove(frame.capture);
+            frame.capture.done();
+        }
+        if (frame.lastItemLinks != null) {
+            //No later item can follow any more
+            toolbarLinks.addAll(frame.lastItemLinks);
+        }
+        if (frame.role == Role.ROW) {
+            closeRow();
+        }
+    }
+
+    private void text(String raw) {
+        if (raw == null) {
+            //Comments separate text nodes
+            if (row != null) {
+                row.lastTimeOpen = false;
+            }
+            return;
+        }
+        if (captures.isEmpty() && row == null) {
+            return;
+        }
+        String text = Parser.unescapeEntities(raw, false);
+        for (Capture capture : captures) {
+            capture.text(text);
+        }
+        if (row != null && top().role == Role.HEAD && top().index == 2) {
+            //Direct text of the cell containing the date
+            if (row.lastTimeOpen) {
+                row.lastTime += text;
+            } else {
+                row.lastTime = text;
+                row.lastTimeOpen = true;
+                row.timeCount++;
+            }
+        }
+    }
+
+    // --------------------------------LISTING---------------------------------
+
+    private void opened(Frame frame) {
+        if ("register".equals(frame.id) && registerCapture == null) {
+            frame.capture = registerCapture = new Capture();
+            captures.add(frame.capture);
+        } else if (frame.tag.equals("li") && isInToolbarMenu()) {
+            //Only the links of the last item of a menu count, so a following item replaces them
+            frame.menuItem = true;
+            parent(1).lastItemLinks = new ArrayList<>();
+        } else if (frame.tag.equals("a") && isInMenuItem()) {
+            frame.capture = new Capture();
+            captures.add(frame.capture);
+            for (int i = 1; i < stack.size() - 1; i++) {
+                if (stack.get(i).menuItem) {
+                    stack.get(i - 1).lastItemLinks.add(frame.capture);
+                }
+            }
+        } else if (frame.tag.equals("table") && row == null && isRowTable()) {
+            frame.role = Role.ROW;
+            row = new Row();
+        } else if (row != null && (frame.tag.equals("td")) && isRowCell()) {
+            if (frame.hasClass("printhead")) {
+                frame.role = Role.HEAD;
+                frame.index = row.heads++;
+                if (frame.index == 2) {
+                    frame.capture = row.sizeCapture = new Capture();
+                    captures.add(frame.capture);
+                }
+            } else if (frame.hasClass("printcontent")) {
+                frame.role = Role.CONTENT;
+                if (row.descriptionCapture == null) {
+                    frame.capture = row.descriptionCapture = new Capture();
+                    captures.add(frame.capture);
+                }
+            } else if (frame.hasClass("blank")) {
+                frame.role = Role.BLANK;
+            }
+        } else if (row != null && frame.tag.equals("a")) {
+            Frame cell = getRowCell();
+            if (cell != null && cell.role == Role.HEAD && cell.index == 1 && row.nameCapture == null) {
+                frame.capture = row.nameCapture = new Capture();
+                captures.add(frame.capture);
+            }
+        }
+    }
+
+    private void element(String name, Map<String, String> attributes) {
+        if (row == null) {
+            return;
+        }
+        if (name.equals("img")) {
+            Frame cell = getRowCell();
+            if (cell != null && cell.role == Role.BLANK) {
+                row.insets++;
+            }
+        } else if (name.equals("a") && attributes.containsKey("title") && row.href == null) {
+            Frame cell = getRowCell();
+            if (cell != null && cell.role == Role.HEAD && cell.index == 2) {
+                row.href = attributes.containsKey("href") ? absUrl(baseUri, attributes.get("href")) : "";
+            }
+        }
+    }
+
+    /**
+     * @return true, if the element opened now is below a toolbar menu
+     */
+    private boolean isInToolbarMenu() {
+        boolean inToolbar = false;
+        for (int i = 0; i < stack.size() - 1; i++) {
+            Frame frame = stack.get(i);
+            if (inToolbar && frame.hasClass("toolbar_menu")) {
+                return true;
+            }
+            if ("toolbar".equals(frame.id)) {
+                inToolbar = true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isInMenuItem() {
+        for (int i = 1; i < stack.size() - 1; i++) {
+            if (stack.get(i).menuItem) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true, if a table opened now matches the path of the row tables
+     */
+    private boolean isRowTable() {
+        return is(parent(1), "td", -1) && is(parent(2), "tr", -1) && is(parent(3), "tbody", -1) && is(parent(4), "table", -1)
+                && is(parent(5), "td", 2) && is(parent(6), "tr", 2) && is(parent(7), "tbody", -1) && is(parent(8), "table", -1)
+                && parent(9) != null && "content".equals(parent(9).id);
+    }
+
+    /**
+     * @return true, if the cell opened now is a direct cell of the current row table
+     */
+    private boolean isRowCell() {
+        return is(parent(1), "tr", -1) && is(parent(2), "tbody", -1) && parent(3) != null && parent(3).role == Role.ROW;
+    }
+
+    /**
+     * @return the direct cell of the current row table containing the current element
+     */
+    private Frame getRowCell() {
+        for (int i = stack.size() - 1; i > 0; i--) {
+            Frame frame = stack.get(i);
+            if (frame.role == Role.ROW) {
+                return null;
+            } else if (frame.role != Role.NONE) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    private static boolean is(Frame frame, String tag, int nth) {
+        return frame != null && frame.tag.equals(tag) && (nth < 0 || frame.nth == nth);
+    }
+
+    private void closeRow() throws StudipException {
+        Row row = this.row;
+        this.row = null;
+        if (row.heads >= 3 && row.nameCapture != null && row.href != null && row.timeCount > 0) {
+            ListingRow listingRow = new ListingRow(
+                    row.href,
+                    row.nameCapture.result,
+                    StringUtil.normaliseWhitespace(row.lastTime).trim().replace("\u00a0", ""),
+                    row.sizeCapture.result,
+                    row.descriptionCapture == null ? "" : row.descriptionCapture.result,
+                    row.insets);
+            if (!handler.onRow(listingRow)) {
+                stopped = true;
+            }
+        }
+    }
+
+    /**
+     * Resolves like {@link org.jsoup.nodes.Node#absUrl(String)}
+     */
+    private static String absUrl(String baseUri, String relUrl) {
+        try {
+            URL base;
+            try {
+                base = new URL(baseUri);
+            } catch (MalformedURLException e) {
+                return new URL(relUrl).toExternalForm();
+            }
+            if (relUrl.startsWith("?")) {
+                relUrl = base.getPath() + relUrl;
+            }
+            return new URL(base, relUrl).toExternalForm();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static enum Role {
+        NONE, ROW, HEAD, BLANK, CONTENT
+    }
+
+    private static class Frame {
+        private final String tag;
+        private final String id;
+        private final String classes;
+        private Map<String, Integer> childCounts;
+        private int nth;
+        private Role role = Role.NONE;
+        private int index;
+        private Capture capture;
+        private boolean menuItem;
+        private List<Capture> lastItemLinks;
+
+        private Frame(String tag, String id, String classes) {
+            this.tag = tag;
+            this.id = id;
+            this.classes = classes;
+        }
+
+        private int countChild(String tag) {
+            if (childCounts == null) {
+                childCounts = new HashMap<>();
+            }
+            Integer count = childCounts.get(tag);
+            count = count == null ? 1 : count + 1;
+            childCounts.put(tag, count);
+            return count;
+        }
+
+        private boolean hasClass(String name) {
+            if (classes == null) {
+                return false;
+            }
+            for (String c : classes.trim().split("\\s+")) {
+                if (c.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Row {
+        private int heads = 0;
+        private int insets = 0;
+        private Capture nameCapture;
+        private Capture sizeCapture;
+        private Capture descriptionCapture;
+        private String href;
+        private String lastTime;
+        private boolean lastTimeOpen = false;
+        private int timeCount = 0;
+    }
+
+    /**
+     * Collects the text of an element like {@link org.jsoup.nodes.Element#text()}
+     */
+    private static class Capture {
+        private final StringBuilder accum = new StringBuilder();
+        private String result;
+
+        private void text(String text) {
+            text = StringUtil.normaliseWhitespace(text);
+            if (endsWithSpace() && text.startsWith(" ")) {
+                text = text.substring(1);
+            }
+            accum.append(text);
+        }
+
+        private void element(String name) {
+            if (accum.length() > 0 && (Tag.valueOf(name).isBlock() || name.equals("br")) && !endsWithSpace()) {
+                accum.append(" ");
+            }
+        }
+
+        private boolean endsWithSpace() {
+            return accum.length() != 0 && accum.charAt(accum.length() - 1) == ' ';
+        }
+
+        private void done() {
+            result = accum.toString().trim();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.studip.jsoup;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * On-disk cache of fetched pages together with their validators, used for conditional requests.
+ * Pages are stored under the hash of their key, so a new version of a page replaces the old one.
+ * Pages that aren't requested any more, e.g. of seminars that were left, are evicted once the cache
+ * holds more than {@link #getMaxEntries()} pages, least recently used first.
+ */
+public class PageCache {
+    private static final Logger log = LoggerFactory.getLogger(PageCache.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private final Path root;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    public PageCache(Path root) throws IOException {
+        this.root = root;
+        Files.createDirectories(root);
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public synchronized Entry get(String key) {
+        String name = hash(key.getBytes(StandardCharsets.UTF_8));
+        Path meta = root.resolve(name + ".json");
+        Path body = root.resolve(name + ".html");
+        if (!Files.isRegularFile(meta) || !Files.isRegularFile(body)) {
+            return null;
+        }
+        try (Reader r = Files.newBufferedReader(meta, StandardCharsets.UTF_8)) {
+            JSONObject json = (JSONObject) new JSONParser().parse(r);
+            if (!key.equals(json.get("key"))) {
+                return null;
+            }
+            Entry entry = new Entry(
+                    (String) json.get("etag"),
+                    (String) json.get("lastModified"),
+                    (String) json.get("contentType"),
+                    Files.readAllBytes(body)
+            );
+            if (!entry.getHash().equals(json.get("hash"))) {
+                log.debug("Cached page " + key + " is corrupt");
+                remove(name);
+                return null;
+            }
+            //Used recently, so it isn't evicted
+            Files.setLastModifiedTime(meta, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (IOException | org.json.simple.parser.ParseException | ClassCastException e) {
+            log.warn("Illegal cache entry " + meta, e);
+            remove(name);
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized void put(String key, Entry entry) {
+        String name = hash(key.getBytes(StandardCharsets.UTF_8));
+        JSONObject json = new JSONObject();
+        json.put("key", key);
+        json.put("etag", entry.getETag());
+        json.put("lastModified", entry.getLastModified());
+        json.put("contentType", entry.getContentType());
+        json.put("hash", entry.getHash());
+        try {
+            Files.write(root.resolve(name + ".html"), entry.getBody());
+            try (Writer w = Files.newBufferedWriter(root.resolve(name + ".json"), StandardCharsets.UTF_8)) {
+                w.write(json.toJSONString());
+            }
+        } catch (IOException e) {
+            log.warn("Couldn't cache page " + key, e);
+        }
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used pages until at most {@link #getMaxEntries()} are left
+     */
+    private void evict() {
+        final Map<Path, Long> used = new HashMap<>();
+        try (DirectoryStream<Path> metas = Files.newDirectoryStream(root, "*.json")) {
+            for (Path meta : metas) {
+                used.put(meta, Files.getLastModifiedTime(meta).toMillis());
+            }
+        } catch (IOException e) {
+            log.warn("Couldn't list cached pages", e);
+            return;
+        }
+        if (used.size() <= maxEntries) {
+            return;
+        }
+        List<Path> lru = new ArrayList<>(used.keySet());
+        Collections.sort(lru, new Comparator<Path>() {
+            @Override
+            public int compare(Path a, Path b) {
+                return Long.compare(used.get(a), used.get(b));
+            }
+        });
+        for (Path meta : lru.subList(0, lru.size() - maxEntries)) {
+            String fileName = meta.getFileName().toString();
+            remove(fileName.substring(0, fileName.length() - ".json".length()));
+        }
+    }
+
+    private void remove(String name) {
+        try {
+            Files.deleteIfExists(root.resolve(name + ".json"));
+            Files.deleteIfExists(root.resolve(name + ".html"));
+        } catch (IOException e) {
+            log.warn("Couldn't remove cached page " + name, e);
+        }
+    }
+
+    public static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder bob = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                bob.append(Character.forDigit((b >> 4) & 0xF, 16));
+                bob.append(Character.forDigit(b & 0xF, 16));
+            }
+            return bob.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    public static class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final String contentType;
+        private final byte[] body;
+        private final String hash;
+
+        public Entry(String etag, String lastModified, String contentType, byte[] body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.body = body;
+            this.hash = PageCache.hash(body);
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+    }
+}
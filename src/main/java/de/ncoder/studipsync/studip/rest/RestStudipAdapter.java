@@ -0,0 +1,551 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.studip.rest;
+
+import de.ncoder.studipsync.data.Download;
+import de.ncoder.studipsync.data.LoginData;
+import de.ncoder.studipsync.data.Seminar;
+import de.ncoder.studipsync.studip.DownloadRequest;
+import de.ncoder.studipsync.studip.DownloadResponse;
+import de.ncoder.studipsync.studip.StudipAdapter;
+import de.ncoder.studipsync.studip.StudipException;
+import de.ncoder.studipsync.ui.UIAdapter;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Gets seminars, folders and files from the JSON REST API of StudIP instead of scraping its web pages.
+ * Requests are authenticated with HTTP basic auth, so no session needs to be kept.
+ * <p/>
+ * The downloads are created with the same URLs as the ones found on the web pages, so that their hashes and local
+ * paths don't depend on the adapter used. As the API doesn't offer folders as zip, they are packed locally from
+ * the contents of their files. The API also doesn't mark files as new, so downloads are never marked as changed.
+ * <p/>
+ * Uses the following routes:
+ * <ul>
+ * <li><code>GET /user</code> for checking the login data</li>
+ * <li><code>GET /user/:user_id/courses</code>, <code>GET /semesters</code> and <code>GET /studip/settings</code>
+ * for listing the seminars</li>
+ * <li><code>GET /course/:course_id/top_folder</code> and <code>GET /folder/:folder_id</code> for listing folders
+ * with their <code>subfolders</code> and <code>files</code></li>
+ * <li><code>GET /file/:file_id/content</code> for downloading a file</li>
+ * </ul>
+ */
+public class RestStudipAdapter implements StudipAdapter {
+    private static final Logger log = LoggerFactory.getLogger(RestStudipAdapter.class);
+
+    public static final String DEFAULT_API_URL = PAGE_BASE + "/studip/api.php";
+
+    private static final String ROUTE_USER = "/user";
+    private static final String ROUTE_COURSES = "/user/%s/courses?offset=%d&limit=%d";
+    private static final String ROUTE_SEMESTERS = "/semesters?limit=1000";
+    private static final String ROUTE_SETTINGS = "/studip/settings";
+    private static final String ROUTE_TOP_FOLDER = "/course/%s/top_folder";
+    private static final String ROUTE_FOLDER = "/folder/%s";
+    private static final String ROUTE_FILE_CONTENT = "/file/%s/content";
+    private static final int PAGE_SIZE = 100;
+
+    private static final String PAGE_FILE = PAGE_BASE + "/studip/sendfile.php?type=0&" + PARAM_FILE_ID + "=%s&" + PARAM_FILE_NAME + "=%s";
+    private static final String PAGE_FOLDER = PAGE_BASE + "/studip/folder.php?cmd=tree&" + PARAM_FOLDER_ID + "=%s";
+
+    private final UIAdapter ui;
+    private final String apiUrl;
+    private final int timeoutMs;
+
+    private volatile String authorization;
+    private volatile String userId;
+    private Seminar currentSeminar;
+    private Map<String, String> semesters;
+    private Map<String, String> seminarTypes;
+    /**
+     * The files contained in each folder found by the last listing, needed for packing the folder
+     */
+    private final Map<String, List<Download>> folderContents = new ConcurrentHashMap<>();
+
+    public RestStudipAdapter(UIAdapter ui, String apiUrl, int timeoutMs) {
+        this.ui = ui;
+        this.apiUrl = apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
+        this.timeoutMs = timeoutMs;
+    }
+
+    // --------------------------------LIFECYCLE-------------------------------
+
+    @Override
+    public void init() throws StudipException {
+        currentSeminar = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ui.close();
+    }
+
+    @Override
+    public void displayWebsite() {
+        log.info("Using the REST API at " + apiUrl + ", there is no website to display");
+    }
+
+    // --------------------------------HTTP------------------------------------
+
+    private HttpURLConnection open(String route) throws IOException {
+        HttpURLConnection con = (HttpURLConnection) new URL(apiUrl + route).openConnection();
+        con.setConnectTimeout(timeoutMs);
+        con.setReadTimeout(timeoutMs);
+        con.setRequestProperty("Accept", "application/json");
+        String authorization = this.authorization;
+        if (authorization != null) {
+            con.setRequestProperty("Authorization", authorization);
+        }
+        return con;
+    }
+
+    private JSONObject get(String route) throws StudipException {
+        try {
+            HttpURLConnection con = open(route);
+            try {
+                int status = con.getResponseCode();
+                if (status == HttpURLConnection.HTTP_UNAUTHORIZED) {
+                    authorization = null;
+                    userId = null;
+                    throw new StudipException("Not logged in");
+                } else if (status != HttpURLConnection.HTTP_OK) {
+                    throw new StudipException("Unexpected response " + status + " " + con.getResponseMessage());
+                }
+                try (Reader reader = new InputStreamReader(con.getInputStream(), Charset.forName("UTF-8"))) {
+                    Object json = new JSONParser().parse(reader);
+                    if (!(json instanceof JSONObject)) {
+                        throw new StudipException("Expected a JSON object, but got " + json);
+                    }
+                    log.trace("GET: " + route);
+                    return (JSONObject) json;
+                }
+            } finally {
+                con.disconnect();
+            }
+        } catch (IOException | ParseException e) {
+            StudipException ex = new StudipException("Can't get " + route, e);
+            ex.put("rest.route", route);
+            throw ex;
+        } catch (StudipException ex) {
+            ex.put("rest.route", route);
+            throw ex;
+        }
+    }
+
+    private static String getString(JSONObject json, String key) {
+        Object value = json.get(key);
+        return value == null ? "" : value.toString();
+    }
+
+    private static long getLong(JSONObject json, String key) {
+        Object value = json.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        try {
+            return value == null ? -1 : Long.parseLong(value.toString());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static List<JSONObject> getObjects(Object value) {
+        List<JSONObject> objects = new ArrayList<>();
+        if (value instanceof JSONArray) {
+            for (Object element : (JSONArray) value) {
+                if (element instanceof JSONObject) {
+                    objects.add((JSONObject) element);
+                }
+            }
+        } else if (value instanceof JSONObject) {
+            //Collections are objects keyed by the route of each element
+            for (Object element : ((JSONObject) value).values()) {
+                if (element instanceof JSONObject) {
+                    objects.add((JSONObject) element);
+                }
+            }
+        }
+        return objects;
+    }
+
+    // --------------------------------LOG IN----------------------------------
+
+    @Override
+    public boolean doLogin() throws CancellationException, StudipException {
+        log.info("Requesting login data.");
+        LoginData login = ui.requestLoginData();
+        if (login == null) {
+            throw new CancellationException("Login cancelled by user");
+        }
+        try {
+            byte[] credentials = (login.getUsername() + ":" + new String(login.getPassword())).getBytes(Charset.forName("UTF-8"));
+            authorization = "Basic " + encodeBase64(credentials);
+            Arrays.fill(credentials, (byte) 0);
+        } finally {
+            login.clean();
+        }
+        try {
+            userId = getString(get(ROUTE_USER), "user_id");
+            return true;
+        } catch (StudipException e) {
+            if (authorization == null) {
+                log.info("Login data rejected.");
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Java 7 has no public Base64 encoder that is still available on later versions
+     */
+    static String encodeBase64(byte[] data) {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        StringBuilder encoded = new StringBuilder((data.length + 2) / 3 * 4);
+        for (int i = 0; i < data.length; i += 3) {
+            int bits = (data[i] & 0xff) << 16
+                    | (i + 1 < data.length ? (data[i + 1] & 0xff) << 8 : 0)
+                    | (i + 2 < data.length ? data[i + 2] & 0xff : 0);
+            encoded.append(alphabet.charAt(bits >> 18 & 0x3f));
+            encoded.append(alphabet.charAt(bits >> 12 & 0x3f));
+            encoded.append(i + 1 < data.length ? alphabet.charAt(bits >> 6 & 0x3f) : '=');
+            encoded.append(i + 2 < data.length ? alphabet.charAt(bits & 0x3f) : '=');
+        }
+        return encoded.toString();
+    }
+
+    @Override
+    public boolean isLoggedIn() {
+        return authorization != null && userId != null;
+    }
+
+    private void ensureLoggedIn() throws StudipException {
+        while (!isLoggedIn()) {
+            doLogin();
+        }
+    }
+
+    // --------------------------------SEMINARS--------------------------------
+
+    /**
+     * The API is stateless, so selecting a seminar only remembers it for {@link #parseDownloads(String, boolean)}
+     */
+    @Override
+    public void selectSeminar(Seminar seminar) throws StudipException {
+        currentSeminar = seminar;
+    }
+
+    @Override
+    public boolean isSeminarSelected(Seminar seminar) {
+        return seminar != null && seminar.equals(currentSeminar);
+    }
+
+    @Override
+    public Seminar getSelectedSeminar() {
+        return currentSeminar;
+    }
+
+    @Override
+    public List<Seminar> parseSeminars() throws StudipException {
+        ensureLoggedIn();
+        List<Seminar> seminars = new ArrayList<>();
+        long total = Long.MAX_VALUE;
+        for (int offset = 0; offset < total; offset += PAGE_SIZE) {
+            JSONObject page = get(String.format(ROUTE_COURSES, userId, offset, PAGE_SIZE));
+            List<JSONObject> courses = getObjects(page.get("collection"));
+            for (JSONObject course : courses) {
+                //Names are formatted like on the web pages, "number type: title"
+                String id = getString(course, "course_id");
+                String number = getString(course, "number");
+                seminars.add(Seminar.getSeminar(
+                        String.format(PAGE_SELECT_SEMINAR, id),
+                        (number.isEmpty() ? id : number) + " " + getSeminarType(getString(course, "type")) + ": " + getString(course, "title"),
+                        getSemester(getString(course, "start_semester")) + ", " + getString(course, "subtitle")));
+            }
+            Object pagination = page.get("pagination");
+            total = pagination instanceof JSONObject ? getLong((JSONObject) pagination, "total") : -1;
+            if (courses.isEmpty()) {
+                break;
+            }
+        }
+        log.debug("Parsed " + seminars.size() + " seminars.");
+        log.trace(seminars.toString());
+        return seminars;
+    }
+
+    private synchronized String getSemester(String route) throws StudipException {
+        if (semesters == null) {
+            semesters = new HashMap<>();
+            for (JSONObject semester : getObjects(get(ROUTE_SEMESTERS).get("collection"))) {
+                semesters.put(getString(semester, "id"), getString(semester, "title"));
+            }
+        }
+        //Semesters are referenced by their route
+        String title = semesters.get(route.substring(route.lastIndexOf('/') + 1));
+        return title != null ? title : "";
+    }
+
+    private synchronized String getSeminarType(String type) throws StudipException {
+        if (seminarTypes == null) {
+            seminarTypes = new HashMap<>();
+            Object types = get(ROUTE_SETTINGS).get("SEM_TYPE");
+            if (types instanceof JSONObject) {
+                for (Object entry : ((JSONObject) types).entrySet()) {
+                    Map.Entry<?, ?> e = (Map.Entry<?, ?>) entry;
+                    if (e.getValue() instanceof JSONObject) {
+                        seminarTypes.put(e.getKey().toString(), getString((JSONObject) e.getValue(), "name"));
+                    }
+                }
+            }
+        }
+        String name = seminarTypes.get(type);
+        return name != null ? name : type;
+    }
+
+    // --------------------------------DOWNLOADS-------------------------------
+
+    @Override
+    public List<Download> parseDownloads(String downloadsUrl, boolean structured) throws StudipException {
+        if (currentSeminar == null) {
+            throw new StudipException("No seminar selected");
+        }
+        return parseDownloads(currentSeminar, downloadsUrl, structured);
+    }
+
+    /**
+     * Lists the folders with their files depth-first, like the folder view ordered by name.
+     * Unstructured listings only contain the files, ordered by their last change like the latest files view.
+     */
+    @Override
+    public List<Download> parseDownloads(Seminar seminar, String downloadsUrl, boolean structured) throws StudipException {
+        try {
+            ensureLoggedIn();
+            JSONObject top = get(String.format(ROUTE_TOP_FOLDER, seminar.getHash()));
+            List<Download> downloads = new ArrayList<>();
+            //The top folder itself is not listed, its subfolders are on the top level
+            addFolderContents(seminar, top, null, downloads);
+            if (!structured) {
+                downloads = getFilesByChange(downloads);
+            }
+            log.debug("Parsed " + downloads.size() + " downloads of " + seminar + ".");
+            log.trace(downloads.toString());
+            return downloads;
+        } catch (StudipException ex) {
+            ex.put("studip.seminar", seminar);
+            ex.put("parseDownloads.structured", structured);
+            throw ex;
+        }
+    }
+
+    @Override
+    public List<Download> parseChangedDownloads(Date since) throws StudipException {
+        if (currentSeminar == null) {
+            throw new StudipException("No seminar selected");
+        }
+        return parseChangedDownloads(currentSeminar, since);
+    }
+
+    /**
+     * Folders are no reliable indicator for changes of their contents, so the whole tree is listed and filtered
+     */
+    @Override
+    public List<Download> parseChangedDownloads(Seminar seminar, Date since) throws StudipException {
+        List<Download> changed = new ArrayList<>();
+        for (Download download : parseDownloads(seminar, PAGE_DOWNLOADS_LATEST, false)) {
+            if (download.getLastModifiedTime() == Download.UNKNOWN_TIME || download.getLastModifiedTime() >= since.getTime()) {
+                changed.add(download);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param parent the download of the folder or null for the top folder
+     * @return the files contained in the folder and its subfolders
+     */
+    private List<Download> addFolderContents(Seminar seminar, JSONObject folder, Download parent, List<Download> downloads) throws StudipException {
+        List<Download> contents = new ArrayList<>();
+        for (JSONObject file : getObjects(folder.get("files"))) {
+            Download download = createDownload(seminar, String.format(PAGE_FILE,
+                    getString(file, "file_id"), encode(getString(file, "filename"))), file, parent);
+            download.setSize(getLong(file, "filesize"));
+            downloads.add(download);
+            contents.add(download);
+        }
+        for (JSONObject subfolder : getObjects(folder.get("subfolders"))) {
+            String id = getString(subfolder, "folder_id");
+            if (!subfolder.containsKey("files") && !subfolder.containsKey("subfolders")) {
+                //Only a reference, get the contents
+                subfolder = get(String.format(ROUTE_FOLDER, id));
+            }
+            Download download = createDownload(seminar, String.format(PAGE_FOLDER, id), subfolder, parent);
+            downloads.add(download);
+            List<Download> files = addFolderContents(seminar, subfolder, download, downloads);
+            folderContents.put(download.getHash(), files);
+            contents.addAll(files);
+        }
+        return contents;
+    }
+
+    private static Download createDownload(Seminar seminar, String url, JSONObject json, Download parent) throws StudipException {
+        Download download;
+        try {
+            download = Download.getDownload(new URL(url));
+        } catch (IOException e) {
+            StudipException ex = new StudipException("Illegal URL " + url, e);
+            ex.put("download.url", url);
+            throw ex;
+        }
+        download.setDisplayName(getString(json, "name"));
+        download.setDisplayDescription(getString(json, "description"));
+        long chdate = getLong(json, "chdate");
+        download.setLastModified(chdate >= 0 ? chdate * 1000 : Download.UNKNOWN_TIME);
+        download.setSeminar(seminar);
+        download.setParent(parent);
+        return download;
+    }
+
+    private static List<Download> getFilesByChange(List<Download> downloads) {
+        List<Download> files = new ArrayList<>();
+        for (Download download : downloads) {
+            if (!download.isFolder()) {
+                files.add(download);
+            }
+        }
+        Collections.sort(files, new Comparator<Download>() {
+            @Override
+            public int compare(Download o1, Download o2) {
+                return Long.compare(o2.getLastModifiedTime(), o1.getLastModifiedTime());
+            }
+        });
+        return files;
+    }
+
+    private static String encode(String value) throws StudipException {
+        try {
+            return URLEncoder.encode(value, URI_ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new StudipException(e);
+        }
+    }
+
+    // --------------------------------TRANSFER--------------------------------
+
+    /**
+     * The API has no folder zips. Folders can still be downloaded, but they are packed locally from their files.
+     */
+    @Override
+    public boolean isFolderZipSupported() {
+        return false;
+    }
+
+    @Override
+    public InputStream startDownload(Download download, boolean diffOnly) throws StudipException, IOException {
+        return startDownload(download, new DownloadRequest(diffOnly)).getBody();
+    }
+
+    @Override
+    public DownloadResponse startDownload(Download download, DownloadRequest request) throws StudipException, IOException {
+        try {
+            ensureLoggedIn();
+            if (download.isFolder()) {
+                return startFolderDownload(download, request.isDiffOnly());
+            }
+            HttpURLConnection con = open(String.format(ROUTE_FILE_CONTENT, download.getHash()));
+            request.applyTo(con);
+            return DownloadResponse.open(con);
+        } catch (StudipException ex) {
+            ex.put("download.request", request);
+            ex.put("download.download", download);
+            throw ex;
+        }
+    }
+
+    /**
+     * Packs the files of the folder into a zip, laid out like the zips created by StudIP.
+     * Ranges and conditions can't be honored, so the whole zip is always sent.
+     */
+    private DownloadResponse startFolderDownload(Download folder, boolean diffOnly) throws StudipException, IOException {
+        List<Download> files = folderContents.get(folder.getHash());
+        if (files == null) {
+            throw new StudipException("Contents of " + folder + " are unknown, list its seminar first");
+        }
+        final Path zip = Files.createTempFile("studip-" + folder.getHash() + "-", ".zip");
+        try {
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip), Charset.forName(ZIP_ENCODING))) {
+                String root = folder.getFileName() + "/";
+                int prefix = folder.getPath().length() + 1;
+                byte[] buffer = new byte[8192];
+                for (Download file : files) {
+                    if (diffOnly && !file.isChanged()) {
+                        continue;
+                    }
+                    ZipEntry entry = new ZipEntry(root + file.getPath().substring(prefix));
+                    if (file.getLastModified() != null) {
+                        entry.setTime(file.getLastModified().getTime());
+                    }
+                    out.putNextEntry(entry);
+                    try (DownloadResponse response = startDownload(file, new DownloadRequest(false))) {
+                        InputStream in = response.getBody();
+                        int read;
+                        while ((read = in.read(buffer)) >= 0) {
+                            out.write(buffer, 0, read);
+                        }
+                    }
+                    out.closeEntry();
+                }
+            }
+            long size = Files.size(zip);
+            InputStream body = new FilterInputStream(Files.newInputStream(zip)) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    Files.deleteIfExists(zip);
+                }
+            };
+            return new DownloadResponse(HttpURLConnection.HTTP_OK, body, 0, size, size, null, null, false);
+        } catch (IOException | StudipException | RuntimeException e) {
+            Files.deleteIfExists(zip);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync;
+
+import de.ncoder.studipsync.data.Download;
+import de.ncoder.studipsync.storage.StagingArea;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.Assert.*;
+
+public class DownloaderTest {
+    private static final int SIZE = 1000;
+
+    private FileServer server;
+    private Downloader downloader;
+    private Download download;
+    private byte[] content;
+    private Path staging;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FileServer();
+        staging = Files.createTempDirectory("studip-staging-");
+        downloader = new Downloader(server.adapter(), new ReentrantLock());
+        downloader.setStaging(new StagingArea(staging));
+        downloader.setSegments(4);
+        downloader.setSegmentThreshold(1);
+        download = Download.getDownload("http://studip.uni-passau.de/studip/sendfile.php?type=0&file_id=segmented01&file_name=big.bin",
+                "Big", "26.08.2013 - 20:38", SIZE + " Bytes");
+        content = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            content[i] = (byte) i;
+        }
+        server.put(download, content);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        downloader.close();
+        server.close();
+        for (Path file : Files.newDirectoryStream(staging)) {
+            Files.delete(file);
+        }
+        Files.delete(staging);
+    }
+
+    @Test
+    public void testSegmented() throws Exception {
+        Downloader.Result result = downloader.fetch(download, false, null);
+        assertArrayEquals(content, Files.readAllBytes(result.getFile()));
+        assertEquals(4, server.getRequests().size());
+        downloader.release(result);
+    }
+
+    @Test
+    public void testSegmentedWithoutValidator() throws Exception {
+        server.setETag(null);
+        Downloader.Result result = downloader.fetch(download, false, null);
+        assertArrayEquals(content, Files.readAllBytes(result.getFile()));
+        assertEquals(Arrays.asList("segmented01 bytes=0-249", "segmented01"), server.getRequests());
+        downloader.release(result);
+    }
+
+    @Test
+    public void testSegmentedWithWeakValidator() throws Exception {
+        server.setETag("W/\"v1\"");
+        Downloader.Result result = downloader.fetch(download, false, null);
+        assertArrayEquals(content, Files.readAllBytes(result.getFile()));
+        assertEquals(Arrays.asList("segmented01 bytes=0-249", "segmented01"), server.getRequests());
+        downloader.release(result);
+    }
+}
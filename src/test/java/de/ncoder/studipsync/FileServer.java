@@ -0,0 +1,170 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import de.ncoder.studipsync.data.Download;
+import de.ncoder.studipsync.studip.DownloadRequest;
+import de.ncoder.studipsync.studip.DownloadResponse;
+import de.ncoder.studipsync.studip.StudipAdapter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the contents of every download from a local HTTP server, with ranges and conditional requests
+ * handled like StudIP does. The validators sent by the server can be changed to imitate other servers.
+ */
+class FileServer implements AutoCloseable {
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private final HttpServer server;
+    private final Map<String, byte[]> contents = Collections.synchronizedMap(new HashMap<String, byte[]>());
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private volatile String etag = "\"v1\"";
+    private volatile String lastModified = null;
+
+    FileServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        String hash = exchange.getRequestURI().getPath().substring(1);
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        requests.add(hash + (range != null ? " " + range : "") + (ifNoneMatch != null ? " if-none-match " + ifNoneMatch : ""));
+        byte[] content = contents.get(hash);
+        if (content == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        if (lastModified != null) {
+            exchange.getResponseHeaders().set("Last-Modified", lastModified);
+        }
+        if (etag != null && etag.equals(ifNoneMatch)) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        int start = 0;
+        int end = content.length - 1;
+        Matcher matcher = range == null ? null : RANGE_PATTERN.matcher(range);
+        if (matcher != null && matcher.matches()) {
+            start = Integer.parseInt(matcher.group(1));
+            if (!matcher.group(2).isEmpty()) {
+                end = Math.min(end, Integer.parseInt(matcher.group(2)));
+            }
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            exchange.sendResponseHeaders(206, end - start + 1);
+        } else {
+            exchange.sendResponseHeaders(200, content.length);
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content, start, end - start + 1);
+        }
+    }
+
+    void put(Download download, byte[] content) {
+        contents.put(download.getHash(), content);
+    }
+
+    void setETag(String etag) {
+        this.etag = etag;
+    }
+
+    void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return the requests made so far, as the hash of the download followed by the range and condition, if any
+     */
+    List<String> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    /**
+     * @return an adapter that only supports downloading, init and close, all other methods throw an UnsupportedOperationException
+     */
+    StudipAdapter adapter() {
+        return (StudipAdapter) Proxy.newProxyInstance(StudipAdapter.class.getClassLoader(), new Class<?>[]{StudipAdapter.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        switch (method.getName()) {
+                            case "startDownload":
+                                if (args.length == 2 && args[1] instanceof DownloadRequest) {
+                                    return startDownload((Download) args[0], (DownloadRequest) args[1]);
+                                }
+                                break;
+                            case "isFolderZipSupported":
+                                return true;
+                            case "init":
+                            case "close":
+                                return null;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private DownloadResponse startDownload(Download download, DownloadRequest request) throws IOException {
+        HttpURLConnection con = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getAddress().getPort()
+                + "/" + download.getHash()).openConnection();
+        request.applyTo(con);
+        return DownloadResponse.open(con);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync;
+
+import de.ncoder.studipsync.data.Download;
+import de.ncoder.studipsync.data.Seminar;
+import de.ncoder.studipsync.storage.LocalStorage;
+import de.ncoder.studipsync.storage.ValidatorStore;
+import de.ncoder.studipsync.studip.StudipAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SyncerTest {
+    private FileServer server;
+    private Syncer syncer;
+    private Path root;
+    private Download download;
+    private List<Download> listing;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FileServer();
+        root = Files.createTempDirectory("studip-sync-");
+        syncer = new Syncer(server.adapter(), LocalStorage.openZip(root.resolve("studip.zip")));
+        syncer.setValidators(new ValidatorStore(root.resolve("validators.json")));
+        Seminar seminar = Seminar.getSeminar(String.format(StudipAdapter.PAGE_SELECT_SEMINAR, "b1c2d3e4f5a6b7c8d9e0f1a2b3c4d5e6"),
+                "5793 Vorlesung: Rechnernetze", "WS 2013/14, Grundlagen");
+        download = Download.getDownload("http://studip.uni-passau.de/studip/sendfile.php?type=0&file_id=revalidate01&file_name=slides.pdf",
+                "Slides", "26.08.2013 - 20:38", "5 Bytes");
+        download.setSeminar(seminar);
+        download.setLevel(0);
+        listing = Collections.singletonList(download);
+        content = "slide".getBytes("UTF-8");
+        server.put(download, content);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        syncer.close();
+        server.close();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void testForcedSyncRevalidates() throws Exception {
+        syncer.syncDownloads(listing, false);
+        Path local = syncer.getStorage().resolve(download);
+        assertArrayEquals(content, Files.readAllBytes(local));
+
+        assertTrue(syncer.syncDownloads(listing, true));
+        assertEquals(Arrays.asList("revalidate01", "revalidate01 if-none-match \"v1\""), server.getRequests());
+        assertArrayEquals(content, Files.readAllBytes(local));
+    }
+
+    @Test
+    public void testForcedSyncWithoutLocalCopy() throws Exception {
+        syncer.syncDownloads(listing, false);
+        Path local = syncer.getStorage().resolve(download);
+        Files.delete(local);
+
+        assertTrue(syncer.syncDownloads(listing, true));
+        assertEquals(Arrays.asList("revalidate01", "revalidate01"), server.getRequests());
+        assertArrayEquals(content, Files.readAllBytes(local));
+    }
+}
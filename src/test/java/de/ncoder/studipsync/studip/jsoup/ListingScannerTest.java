@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.studip.jsoup;
+
+import de.ncoder.studipsync.data.DateUtils;
+import de.ncoder.studipsync.data.Download;
+import de.ncoder.studipsync.data.Seminar;
+import de.ncoder.studipsync.studip.StudipAdapter;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parses saved listing pages with the Document based {@link JsoupStudipAdapter#parseRows(org.jsoup.nodes.Document)}
+ * and the streaming {@link ListingScanner}, which must find the same downloads on every page.
+ * The expected downloads are stored next to the pages, in the format of {@link #describe(List, boolean)}.
+ */
+public class ListingScannerTest {
+    private static final String CHARSET = "windows-1252";
+
+    @Test
+    public void testFolderPage() throws Exception {
+        testPage("folder", StudipAdapter.PAGE_DOWNLOADS, true);
+    }
+
+    @Test
+    public void testLatestPage() throws Exception {
+        testPage("latest", StudipAdapter.PAGE_DOWNLOADS_LATEST, false);
+    }
+
+    @Test
+    public void testLoggedOutPage() throws Exception {
+        String html = read("login.html", CHARSET);
+        assertFalse(JsoupStudipAdapter.isLoggedIn(Jsoup.parse(html, StudipAdapter.PAGE_LOGIN)));
+
+        final List<ListingRow> scanned = new ArrayList<>();
+        ListingScanner scanner = new ListingScanner(new StringReader(html), StudipAdapter.PAGE_LOGIN, new ListingScanner.Handler() {
+            @Override
+            public boolean onRow(ListingRow row) {
+                scanned.add(row);
+                return true;
+            }
+        });
+        assertTrue(scanner.scan());
+        assertFalse(scanner.isLoggedIn());
+        assertNull(scanner.getSelectedSeminar());
+        assertTrue(scanned.isEmpty());
+    }
+
+    private void testPage(String name, String baseUri, boolean structured) throws Exception {
+        String html = read(name + ".html", CHARSET);
+        String expected = read(name + ".txt", "UTF-8");
+        Seminar seminar = Seminar.getSeminar(String.format(StudipAdapter.PAGE_SELECT_SEMINAR, "a0b1c2d3e4f5a6b7c8d9e0f1a2b3c4d5"),
+                "5792 Vorlesung: Algorithmen & Datenstrukturen", "WS 2013/14, Grundlagen");
+
+        Document document = Jsoup.parse(html, baseUri);
+        assertTrue(JsoupStudipAdapter.isLoggedIn(document));
+        List<ListingRow> parsed = JsoupStudipAdapter.parseRows(document);
+        //Downloads are shared, so they must be described before the next listing changes them
+        String parsedDownloads = describe(JsoupStudipAdapter.createDownloads(seminar, parsed, structured), structured);
+
+        final List<ListingRow> scanned = new ArrayList<>();
+        ListingScanner scanner = new ListingScanner(new StringReader(html), baseUri, new ListingScanner.Handler() {
+            @Override
+            public boolean onRow(ListingRow row) {
+                scanned.add(row);
+                return true;
+            }
+        });
+        assertTrue(scanner.scan());
+        assertTrue(scanner.isLoggedIn());
+        assertEquals(seminar.getFullName(), scanner.getSelectedSeminar());
+        String scannedDownloads = describe(JsoupStudipAdapter.createDownloads(seminar, scanned, structured), structured);
+
+        assertEquals(parsed.size(), scanned.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            assertRowEquals(parsed.get(i), scanned.get(i));
+        }
+        assertEquals(expected, parsedDownloads);
+        assertEquals(expected, scannedDownloads);
+    }
+
+    private static void assertRowEquals(ListingRow expected, ListingRow actual) {
+        assertEquals(expected.getUrl(), actual.getUrl());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getTime(), actual.getTime());
+        assertEquals(expected.getInfo(), actual.getInfo());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getInsets(), actual.getInsets());
+    }
+
+    /**
+     * @return one line per download, with the place in the folder hierarchy only given for structured listings
+     */
+    private static String describe(List<Download> downloads, boolean structured) {
+        SimpleDateFormat format = new SimpleDateFormat(DateUtils.LISTING_DATE_FORMAT);
+        StringBuilder description = new StringBuilder();
+        for (Download download : downloads) {
+            if (structured) {
+                description.append(download.getLevel()).append(" ").append(download.getPath()).append(" | ");
+            }
+            description.append(download.getDisplayName())
+                    .append(" | ").append(download.getLastModifiedTime() == Download.UNKNOWN_TIME ? "?" : format.format(download.getLastModified()))
+                    .append(" | ").append(download.getSize())
+                    .append(" | ").append(download.getDisplayDescription())
+                    .append(" | ").append(download.getFullUrl())
+                    .append("\n");
+        }
+        return description.toString();
+    }
+
+    private String read(String resource, String charset) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream(resource)) {
+            assertNotNull("Missing " + resource, in);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), charset);
+        }
+    }
+}
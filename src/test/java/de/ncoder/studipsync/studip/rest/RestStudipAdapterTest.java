@@ -0,0 +1,269 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Niko Fink
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.ncoder.studipsync.studip.rest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import de.ncoder.studipsync.data.Download;
+import de.ncoder.studipsync.data.LoginData;
+import de.ncoder.studipsync.data.Seminar;
+import de.ncoder.studipsync.studip.DownloadRequest;
+import de.ncoder.studipsync.studip.DownloadResponse;
+import de.ncoder.studipsync.studip.StudipAdapter;
+import de.ncoder.studipsync.ui.UIAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the adapter against a local stub of the StudIP REST API
+ */
+public class RestStudipAdapterTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String AUTHORIZATION = "Basic dXNlcjpzZWNyZXQ="; //user:secret
+    private static final int COURSES = 150;
+
+    private final Map<String, String> routes = new HashMap<>();
+    private final List<String> passwords = new ArrayList<>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private HttpServer server;
+    private RestStudipAdapter adapter;
+
+    @Before
+    public void setUp() throws Exception {
+        routes.put("/api/user", "{\"user_id\":\"u1\",\"username\":\"user\"}");
+        routes.put("/api/semesters", "{\"collection\":{\"/api/semester/s1\":{\"id\":\"s1\",\"title\":\"WS 2013/14\"}}}");
+        routes.put("/api/studip/settings", "{\"SEM_TYPE\":{\"1\":{\"name\":\"Vorlesung\",\"class\":\"1\"}}}");
+        routes.put("/api/course/course00000/top_folder", "{\"folder_id\":\"top\",\"files\":[],\"subfolders\":["
+                + "{\"folder_id\":\"folder0001\",\"name\":\"Allgemeiner Dateiordner\",\"chdate\":1400000000,"
+                + "\"files\":[{\"file_id\":\"file000001\",\"name\":\"Slides\",\"filename\":\"slides 1.pdf\",\"filesize\":5,\"chdate\":1400000100}],"
+                + "\"subfolders\":[{\"folder_id\":\"folder0002\",\"name\":\"Sheets\"}]}]}");
+        routes.put("/api/folder/folder0002", "{\"folder_id\":\"folder0002\",\"name\":\"Sheets\",\"chdate\":\"1400000200\","
+                + "\"files\":[{\"file_id\":\"file000002\",\"name\":\"Sheet 1\",\"filename\":\"sheet1.txt\",\"filesize\":3,\"chdate\":1400000300}],"
+                + "\"subfolders\":[{\"folder_id\":\"folder0003\",\"name\":\"Solutions\",\"chdate\":1400000400,"
+                + "\"files\":[{\"file_id\":\"file000003\",\"name\":\"Solution 1\",\"filename\":\"solution1.txt\",\"filesize\":2,\"chdate\":1400000500}],"
+                + "\"subfolders\":[]}]}");
+        routes.put("/api/file/file000001/content", "hello");
+        routes.put("/api/file/file000002/content", "abc");
+        routes.put("/api/file/file000003/content", "42");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                requests.add(exchange.getRequestURI().toString());
+                String body = path.startsWith("/api/user/u1/courses") ? getCourses(exchange.getRequestURI()) : routes.get(path);
+                int status = !AUTHORIZATION.equals(exchange.getRequestHeaders().getFirst("Authorization")) ? 401
+                        : body == null ? 404 : 200;
+                byte[] bytes = status == 200 ? body.getBytes(UTF_8) : new byte[0];
+                exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        });
+        server.start();
+
+        adapter = new RestStudipAdapter(new UIAdapter() {
+            @Override
+            public LoginData requestLoginData() {
+                return passwords.isEmpty() ? null : new LoginData("user", passwords.remove(0).toCharArray());
+            }
+
+            @Override
+            public void displayWebpage(URI uri) {
+            }
+
+            @Override
+            public void close() {
+            }
+        }, "http://127.0.0.1:" + server.getAddress().getPort() + "/api/", 5000);
+        adapter.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        adapter.close();
+        server.stop(0);
+    }
+
+    /**
+     * Serves the page of {@link #COURSES} courses selected by the offset and limit of the query
+     */
+    private static String getCourses(URI uri) {
+        Map<String, Integer> query = new HashMap<>();
+        for (String param : uri.getQuery().split("&")) {
+            String[] pair = param.split("=");
+            query.put(pair[0], Integer.parseInt(pair[1]));
+        }
+        int offset = query.get("offset");
+        int limit = query.get("limit");
+        StringBuilder page = new StringBuilder("{\"collection\":{");
+        for (int i = offset; i < Math.min(offset + limit, COURSES); i++) {
+            String id = String.format("course%05d", i);
+            page.append(i > offset ? "," : "").append("\"/api/course/").append(id).append("\":{\"course_id\":\"").append(id)
+                    .append("\",\"number\":\"").append(5000 + i).append("\",\"title\":\"Course ").append(i)
+                    .append("\",\"subtitle\":\"Sub\",\"type\":\"1\",\"start_semester\":\"/api/semester/s1\"}");
+        }
+        return page.append("},\"pagination\":{\"total\":").append(COURSES).append(",\"offset\":").append(offset)
+                .append(",\"limit\":").append(limit).append("}}").toString();
+    }
+
+    private Seminar getSeminar() throws Exception {
+        passwords.add("secret");
+        return getSeminar(adapter.parseSeminars(), "course00000");
+    }
+
+    /**
+     * Collections are JSON objects, so the order of the seminars is undefined
+     */
+    private static Seminar getSeminar(List<Seminar> seminars, String hash) {
+        for (Seminar seminar : seminars) {
+            if (hash.equals(seminar.getHash())) {
+                return seminar;
+            }
+        }
+        throw new AssertionError("Missing seminar " + hash + " in " + seminars);
+    }
+
+    // --------------------------------LOG IN----------------------------------
+
+    @Test
+    public void testLogin() throws Exception {
+        passwords.add("wrong");
+        passwords.add("secret");
+        assertFalse(adapter.doLogin());
+        assertFalse(adapter.isLoggedIn());
+        assertTrue(adapter.doLogin());
+        assertTrue(adapter.isLoggedIn());
+        assertEquals(Arrays.asList("/api/user", "/api/user"), requests);
+    }
+
+    @Test
+    public void testEncodeBase64() {
+        //Test vectors from RFC 4648
+        String[][] vectors = {{"", ""}, {"f", "Zg=="}, {"fo", "Zm8="}, {"foo", "Zm9v"},
+                {"foob", "Zm9vYg=="}, {"fooba", "Zm9vYmE="}, {"foobar", "Zm9vYmFy"}};
+        for (String[] vector : vectors) {
+            assertEquals(vector[1], RestStudipAdapter.encodeBase64(vector[0].getBytes(UTF_8)));
+        }
+        assertEquals("/+8=", RestStudipAdapter.encodeBase64(new byte[]{(byte) 0xff, (byte) 0xef}));
+    }
+
+    // --------------------------------SEMINARS--------------------------------
+
+    @Test
+    public void testParseSeminars() throws Exception {
+        passwords.add("secret");
+        List<Seminar> seminars = adapter.parseSeminars();
+        assertEquals(COURSES, new HashSet<>(seminars).size());
+        assertTrue(requests.contains("/api/user/u1/courses?offset=0&limit=100"));
+        assertTrue(requests.contains("/api/user/u1/courses?offset=100&limit=100"));
+        Seminar last = getSeminar(seminars, "course00149");
+        assertEquals("5149", last.getID());
+        assertEquals("5149 Vorlesung: Course 149", last.getFullName());
+        assertEquals("WS 2013/14", last.getPeriod());
+    }
+
+    // --------------------------------DOWNLOADS-------------------------------
+
+    @Test
+    public void testParseNestedFolders() throws Exception {
+        Seminar seminar = getSeminar();
+        List<Download> downloads = adapter.parseDownloads(seminar, StudipAdapter.PAGE_DOWNLOADS, true);
+        List<String> paths = new ArrayList<>();
+        List<Integer> levels = new ArrayList<>();
+        for (Download download : downloads) {
+            paths.add(download.getPath());
+            levels.add(download.getLevel());
+            assertEquals(seminar, download.getSeminar());
+        }
+        assertEquals(Arrays.asList(
+                "Allgemeiner_Dateiordner",
+                "Allgemeiner_Dateiordner/slides_1.pdf",
+                "Allgemeiner_Dateiordner/Sheets",
+                "Allgemeiner_Dateiordner/Sheets/sheet1.txt",
+                "Allgemeiner_Dateiordner/Sheets/Solutions",
+                "Allgemeiner_Dateiordner/Sheets/Solutions/solution1.txt"
+        ), paths);
+        assertEquals(Arrays.asList(0, 1, 1, 2, 2, 3), levels);
+        assertTrue(requests.contains("/api/folder/folder0002"));
+
+        Download sheet = downloads.get(3);
+        assertFalse(sheet.isFolder());
+        assertEquals("file000002", sheet.getHash());
+        assertEquals(3, sheet.getSize());
+        assertEquals(1400000300000L, sheet.getLastModified().getTime());
+        assertSame(downloads.get(2), sheet.getParent());
+        assertEquals(1400000200000L, downloads.get(2).getLastModified().getTime());
+
+        List<Download> latest = adapter.parseDownloads(seminar, StudipAdapter.PAGE_DOWNLOADS_LATEST, false);
+        assertEquals(Arrays.asList(downloads.get(5), downloads.get(3), downloads.get(1)), latest);
+    }
+
+    @Test
+    public void testFolderDownload() throws Exception {
+        Seminar seminar = getSeminar();
+        Download folder = adapter.parseDownloads(seminar, StudipAdapter.PAGE_DOWNLOADS, true).get(0);
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (DownloadResponse response = adapter.startDownload(folder, new DownloadRequest(false));
+             ZipInputStream zip = new ZipInputStream(response.getBody(), Charset.forName(StudipAdapter.ZIP_ENCODING))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), read(zip));
+            }
+        }
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("Allgemeiner_Dateiordner/slides_1.pdf", "hello");
+        expected.put("Allgemeiner_Dateiordner/Sheets/sheet1.txt", "abc");
+        expected.put("Allgemeiner_Dateiordner/Sheets/Solutions/solution1.txt", "42");
+        assertEquals(expected, entries);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), UTF_8);
+    }
+}